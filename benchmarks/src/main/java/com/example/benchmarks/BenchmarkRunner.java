@@ -0,0 +1,24 @@
+package com.example.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entrada do benchmarks.jar: mesmas opções de linha de comando do JMH, com o profiler de GC
+ * sempre ligado para reportar taxa de alocação (gc.alloc.rate.norm = bytes/op) junto do throughput.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar                 # todos
+ *   java -jar benchmarks/target/benchmarks.jar FacePath -f 1   # filtro por regex
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
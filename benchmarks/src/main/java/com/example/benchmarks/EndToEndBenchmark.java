@@ -0,0 +1,141 @@
+package com.example.benchmarks;
+
+import com.example.consumerface.FaceEndToEnd;
+import com.example.consumerteam.TeamEndToEnd;
+import com.example.generator.GeneratorImages;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline completo numa JVM, sem container do RabbitMQ: publicação do gerador -> {@link InMemoryBroker}
+ * -> ConsumerFace e ConsumerTeam (decode, features, predict, ack) para cada configuração.
+ *
+ * Carga em malha fechada: no máximo E2E_INFLIGHT mensagens publicadas e ainda sem ack, então a taxa
+ * medida é a sustentada pelo pipeline (a fila não cresce sem limite) e a latência publish->ack não é
+ * dominada pelo tempo parado na fila. Por configuração: msg/s, p50/p90/p99/máx e bytes alocados por
+ * mensagem (todas as threads da JVM: gerador, broker e consumers).
+ *
+ *   java -cp benchmarks/target/benchmarks.jar com.example.benchmarks.EndToEndBenchmark
+ *
+ * Variáveis: E2E_CONFIGS (formato/modo[:n], separados por vírgula; modos sequential, workers:n, batch:n),
+ * E2E_MESSAGES (medidas), E2E_WARMUP, E2E_INFLIGHT, E2E_FACE_RATIO, E2E_RENDER_THREADS (pool de payloads
+ * pré-renderizados do gerador; 0 = render na thread que publica).
+ */
+public class EndToEndBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> env = System.getenv();
+        String[] configs = env.getOrDefault("E2E_CONFIGS",
+                "json/sequential,binary/sequential,binary/workers:4,binary/batch:16").split(",");
+        int messages = Integer.parseInt(env.getOrDefault("E2E_MESSAGES", "2000"));
+        int warmup = Integer.parseInt(env.getOrDefault("E2E_WARMUP", "500"));
+        int inflight = Integer.parseInt(env.getOrDefault("E2E_INFLIGHT", "64"));
+        double faceRatio = Double.parseDouble(env.getOrDefault("E2E_FACE_RATIO", "0.5"));
+        int renderThreads = Integer.parseInt(env.getOrDefault("E2E_RENDER_THREADS", "0"));
+
+        // logs do gerador/consumers ficam de fora da saída e do custo de console
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        out.println(String.format(Locale.ROOT, "%d mensagens por configuração (+%d de aquecimento), %d em voo, %.0f%% face, %s",
+                messages, warmup, inflight, faceRatio * 100,
+                renderThreads > 0 ? "render em " + renderThreads + " threads (pool)" : "render inline"));
+        out.println(String.format("%-22s %10s %9s %9s %9s %9s %12s %7s", "configuração", "msg/s", "p50 ms", "p90 ms",
+                "p99 ms", "máx ms", "KB/msg", "erros"));
+        try {
+            for (String config : configs) {
+                out.println(run(config.trim(), messages, warmup, inflight, faceRatio, renderThreads));
+            }
+        } finally {
+            System.setOut(out);
+        }
+        // threads dos consumers de cada configuração continuam vivas (daemon ou não): encerra aqui
+        System.exit(0);
+    }
+
+    static String run(String config, int messages, int warmup, int inflight, double faceRatio, int renderThreads)
+            throws Exception {
+        String[] parts = config.split("/");
+        boolean binary = "binary".equalsIgnoreCase(parts[0]);
+        String[] mode = (parts.length > 1 ? parts[1] : "sequential").split(":");
+        int parallelism = mode.length > 1 ? Integer.parseInt(mode[1]) : 1;
+        GeneratorImages.startPayloadPool(renderThreads, 512, false, binary);
+
+        try (InMemoryBroker broker = new InMemoryBroker()) {
+            Connection conn = broker.newConnection();
+            FaceEndToEnd.start(conn.createChannel(), mode[0], parallelism);
+            TeamEndToEnd.start(conn.createChannel(), mode[0], parallelism);
+            Channel publisher = conn.createChannel();
+            publisher.exchangeDeclare("images", "topic", true);
+
+            Semaphore window = new Semaphore(inflight);
+            long[] latencies = new long[messages];
+            AtomicInteger measured = new AtomicInteger(-warmup);
+            broker.onSettle(publishedNanos -> {
+                int i = measured.getAndIncrement();
+                if (i >= 0 && i < latencies.length) latencies[i] = System.nanoTime() - publishedNanos;
+                window.release();
+            });
+            Random r = new Random(42);
+
+            publish(publisher, warmup, window, r, faceRatio, binary);
+            await(window, inflight);
+            long errorsBefore = FaceEndToEnd.errors() + TeamEndToEnd.errors();
+            long allocBefore = allocatedBytes();
+            long start = System.nanoTime();
+            publish(publisher, messages, window, r, faceRatio, binary);
+            await(window, inflight);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocBefore;
+            long errors = FaceEndToEnd.errors() + TeamEndToEnd.errors() - errorsBefore;
+
+            Arrays.sort(latencies);
+            return String.format(Locale.ROOT, "%-22s %10.1f %9.2f %9.2f %9.2f %9.2f %12.1f %7d", config,
+                    messages / (elapsed / 1e9), percentile(latencies, 0.5), percentile(latencies, 0.9),
+                    percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6,
+                    allocated / (double) messages / 1024, errors);
+        }
+    }
+
+    // publica n mensagens respeitando a janela de mensagens sem ack
+    private static void publish(Channel channel, int n, Semaphore window, Random r, double faceRatio, boolean binary)
+            throws Exception {
+        for (int i = 0; i < n; i++) {
+            window.acquire();
+            GeneratorImages.publish(channel, r.nextDouble() < faceRatio, r, binary);
+        }
+    }
+
+    // todas confirmadas = a janela inteira livre de novo
+    private static void await(Semaphore window, int inflight) throws InterruptedException {
+        if (!window.tryAcquire(inflight, 5, TimeUnit.MINUTES)) throw new IllegalStateException("mensagens sem ack após 5 min");
+        window.release(inflight);
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1e6;
+    }
+
+    // soma do alocado por todas as threads vivas (gerador, dispatch do broker, workers, log)
+    private static long allocatedBytes() {
+        long[] ids = THREADS.getAllThreadIds();
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(ids)) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.benchmarks;
+
+import com.example.consumerface.FaceStages;
+import com.google.gson.Gson;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caminho por mensagem do ConsumerFace: parse (JSON/Gson e binário), Base64, ImageIO.read
+ * e extractFeatures (raster e getRGB) para a imagem do gerador (64px) e uma foto maior.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FacePathBenchmark {
+
+    @Param({"64", "512"})
+    int size;
+
+    private final Gson gson = new Gson();
+    private String json;
+    private String base64;
+    private byte[] png;
+    private Delivery jsonDelivery, binaryDelivery;
+    private BufferedImage decoded;
+
+    @Setup
+    public void setup() throws Exception {
+        BufferedImage face = scale(FaceStages.sampleImage(true), size);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(face, "png", baos);
+        png = baos.toByteArray();
+        base64 = Base64.getEncoder().encodeToString(png);
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("id", "bench-id");
+        payload.put("type", "face");
+        payload.put("timestamp", "2024-01-01T00:00:00Z");
+        payload.put("image", base64);
+        json = gson.toJson(payload);
+
+        Envelope env = new Envelope(1, false, "images", "face");
+        jsonDelivery = new Delivery(env, new AMQP.BasicProperties(), json.getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("id", "bench-id");
+        headers.put("type", "face");
+        headers.put("timestamp", "2024-01-01T00:00:00Z");
+        binaryDelivery = new Delivery(env, new AMQP.BasicProperties.Builder()
+                .contentType(FaceStages.CONTENT_TYPE_PNG).headers(headers).build(), png);
+        decoded = FaceStages.decodeImage(png);
+    }
+
+    static BufferedImage scale(BufferedImage src, int size) {
+        if (src.getWidth() == size) return src;
+        BufferedImage out = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        g.drawImage(src, 0, 0, size, size, null);
+        g.dispose();
+        return out;
+    }
+
+    @Benchmark
+    public Object gsonParse() {
+        return FaceStages.parseJson(json);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.getDecoder().decode(base64);
+    }
+
+    @Benchmark
+    public Object readPayloadJson() {
+        return FaceStages.readPayload(jsonDelivery);
+    }
+
+    @Benchmark
+    public Object readPayloadBinary() {
+        return FaceStages.readPayload(binaryDelivery);
+    }
+
+    @Benchmark
+    public BufferedImage decodeImage() throws Exception {
+        return FaceStages.decodeImage(png);
+    }
+
+    @Benchmark
+    public double[] extractFeatures() {
+        return FaceStages.extractFeatures(decoded);
+    }
+
+    @Benchmark
+    public double[] extractFeaturesGeneric() {
+        return FaceStages.extractFeaturesGeneric(decoded);
+    }
+
+    @Benchmark
+    public long contentHash() {
+        return FaceStages.contentHash(png);
+    }
+}
@@ -0,0 +1,448 @@
+package com.example.benchmarks;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Broker AMQP 0-9-1 em memória para o benchmark end-to-end: implementa (via Proxy) a parte de
+ * {@link Connection}/{@link Channel} que o gerador e os consumers usam, com a mesma semântica do
+ * RabbitMQ para esse subconjunto:
+ *  - exchanges topic (* e #), direct e headers (x-match all/any); filas com x-message-ttl +
+ *    x-dead-letter-exchange (as filas de retry do RetryHandler);
+ *  - basicConsume com ack manual, basicQos (limite de entregas sem ack por channel), basicAck
+ *    (inclusive multiple), basicReject/basicNack com e sem requeue;
+ *  - callbacks de cada channel numa única thread, em ordem, como no client do RabbitMQ.
+ * onSettle dispara uma vez por mensagem, quando ela chega ao estado final. Uma republicação feita
+ * enquanto a entrega ainda está em voo (o RetryHandler publica no retry/DLQ e só então dá o ack) é
+ * tratada como a mesma mensagem (mesmo messageId ou, sem ele, o mesmo corpo): o ack da original
+ * não conta, só o da última cópia, ou a chegada numa fila sem consumers nem dead-letter (a DLQ).
+ * Sem rede, persistência nem publisher confirms: o custo medido é o do gerador e dos consumers.
+ * Métodos fora desse subconjunto lançam UnsupportedOperationException.
+ */
+public final class InMemoryBroker implements AutoCloseable {
+
+    // cópias vivas de uma mesma mensagem (original, retries, dead-letter) nas filas ou sem ack
+    private static final class Lineage {
+        final Object key;
+        final long publishedNanos;   // da publicação original: a latência conta desde ela
+        int copies;
+
+        Lineage(Object key, long publishedNanos) {
+            this.key = key;
+            this.publishedNanos = publishedNanos;
+        }
+    }
+
+    private static final class Message {
+        final String exchange, routingKey;
+        final AMQP.BasicProperties props;
+        final byte[] body;
+        final Lineage lineage;
+        boolean redelivered, parked;
+
+        Message(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body, Lineage lineage) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+            this.lineage = lineage;
+        }
+    }
+
+    private static final class Binding {
+        final String queue, key;
+        final Pattern topic;
+        final Map<String, Object> args;
+
+        Binding(String queue, String key, Map<String, Object> args) {
+            this.queue = queue;
+            this.key = key;
+            this.topic = topicPattern(key);
+            this.args = args;
+        }
+    }
+
+    private static final class Queue {
+        final String name;
+        final long ttlMs;
+        final String deadLetterExchange;
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        final List<Subscription> consumers = new ArrayList<>();
+        int next;   // round-robin entre os consumers
+
+        Queue(String name, Map<String, Object> args) {
+            this.name = name;
+            Object ttl = args != null ? args.get("x-message-ttl") : null;
+            this.ttlMs = ttl instanceof Number ? ((Number) ttl).longValue() : -1;
+            Object dlx = args != null ? args.get("x-dead-letter-exchange") : null;
+            this.deadLetterExchange = dlx != null ? dlx.toString() : null;
+        }
+    }
+
+    private static final class Subscription {
+        final String tag;
+        final FakeChannel channel;
+        final DeliverCallback callback;
+        final boolean autoAck;
+
+        Subscription(String tag, FakeChannel channel, DeliverCallback callback, boolean autoAck) {
+            this.tag = tag;
+            this.channel = channel;
+            this.callback = callback;
+            this.autoAck = autoAck;
+        }
+    }
+
+    private static final class Unacked {
+        final Queue queue;
+        final Message message;
+
+        Unacked(Queue queue, Message message) {
+            this.queue = queue;
+            this.message = message;
+        }
+    }
+
+    // todo o estado de roteamento é guardado pelo monitor do broker
+    private final Map<String, String> exchanges = new HashMap<>();
+    private final Map<String, List<Binding>> bindings = new HashMap<>();
+    private final Map<String, Queue> queues = new HashMap<>();
+    private final Map<Object, Lineage> inflight = new HashMap<>();   // messageId (ou o próprio byte[]) -> cópias
+    private final List<FakeChannel> channels = new ArrayList<>();
+    private final AtomicInteger consumerTags = new AtomicInteger();
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "broker-ttl");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile LongConsumer onSettle = publishedNanos -> {};
+    private long unroutable;
+
+    /** Chamado uma vez por mensagem, com o instante da publicação original, quando ela chega ao estado final. */
+    public void onSettle(LongConsumer listener) {
+        this.onSettle = listener;
+    }
+
+    public synchronized long unroutable() { return unroutable; }
+
+    public synchronized int queued(String queue) {
+        Queue q = queues.get(queue);
+        return q != null ? q.messages.size() : 0;
+    }
+
+    public Connection newConnection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                new InvocationHandler() {
+                    private volatile boolean open = true;
+
+                    @Override
+                    public Object invoke(Object proxy, Method m, Object[] a) {
+                        switch (m.getName()) {
+                            case "createChannel": return createChannel();
+                            case "isOpen": return open;
+                            case "close": case "abort": open = false; return null;
+                            default: return objectMethod(proxy, m, a, "Connection");
+                        }
+                    }
+                });
+    }
+
+    public Channel createChannel() {
+        FakeChannel state;
+        synchronized (this) {
+            state = new FakeChannel(channels.size() + 1);
+            channels.add(state);
+        }
+        state.proxy = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] {Channel.class}, state);
+        return state.proxy;
+    }
+
+    @Override
+    public void close() {
+        timers.shutdownNow();
+        List<FakeChannel> all;
+        synchronized (this) {
+            all = new ArrayList<>(channels);
+        }
+        for (FakeChannel c : all) c.dispatcher.shutdownNow();
+    }
+
+    // ---- roteamento ----
+
+    // basicPublish: republicação de uma mensagem ainda em voo entra na mesma linhagem
+    private synchronized void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+        Object key = props != null && props.getMessageId() != null ? props.getMessageId() : body;
+        Lineage lineage = inflight.get(key);
+        if (lineage == null) lineage = new Lineage(key, System.nanoTime());
+        publish(exchange, routingKey, props, body, lineage);
+    }
+
+    private synchronized void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body,
+                                      Lineage lineage) {
+        Message msg = new Message(exchange, routingKey, props != null ? props : new AMQP.BasicProperties(), body,
+                lineage);
+        boolean routed = false;
+        if (exchange.isEmpty()) {
+            // exchange default: routing key = nome da fila
+            Queue q = queues.get(routingKey);
+            if (q != null) {
+                enqueue(q, msg);
+                routed = true;
+            }
+        } else {
+            String type = exchanges.get(exchange);
+            if (type == null) throw new IllegalStateException("exchange não declarado: " + exchange);
+            for (Binding b : bindings.getOrDefault(exchange, List.of())) {
+                if (matches(type, b, msg)) {
+                    enqueue(queues.get(b.queue), msg);
+                    routed = true;
+                }
+            }
+        }
+        if (!routed) unroutable++;
+    }
+
+    private static boolean matches(String type, Binding b, Message msg) {
+        switch (type) {
+            case "direct": return b.key.equals(msg.routingKey);
+            case "fanout": return true;
+            case "headers": return headersMatch(b.args, msg.props.getHeaders());
+            default: return b.topic.matcher(msg.routingKey).matches();
+        }
+    }
+
+    private static boolean headersMatch(Map<String, Object> args, Map<String, Object> headers) {
+        if (args == null) return true;
+        boolean any = "any".equals(String.valueOf(args.get("x-match")));
+        boolean matchedAny = false;
+        for (Map.Entry<String, Object> e : args.entrySet()) {
+            if (e.getKey().startsWith("x-")) continue;
+            Object v = headers != null ? headers.get(e.getKey()) : null;
+            boolean eq = v != null && v.toString().equals(String.valueOf(e.getValue()));
+            if (any && eq) return true;
+            if (!any && !eq) return false;
+            matchedAny |= eq;
+        }
+        return !any || matchedAny;
+    }
+
+    // "face.*" -> face\.[^.]+ ; "#" -> qualquer coisa (inclusive vazio)
+    private static Pattern topicPattern(String key) {
+        StringBuilder re = new StringBuilder();
+        String[] words = key.split("\\.", -1);
+        for (int i = 0; i < words.length; i++) {
+            String w = words[i];
+            if ("#".equals(w)) {
+                re.append(i == 0 ? "(?:[^.]+(?:\\.[^.]+)*)?" : "(?:\\.[^.]+)*");
+                continue;
+            }
+            if (i > 0) re.append("\\.");
+            re.append("*".equals(w) ? "[^.]+" : Pattern.quote(w));
+        }
+        return Pattern.compile(re.toString());
+    }
+
+    // cada fila recebe a sua cópia (redelivered/parked são por fila)
+    private void enqueue(Queue q, Message routed) {
+        Message msg = new Message(routed.exchange, routed.routingKey, routed.props, routed.body, routed.lineage);
+        q.messages.addLast(msg);
+        Lineage l = msg.lineage;
+        if (l.copies++ == 0) inflight.put(l.key, l);
+        if (q.ttlMs >= 0 && q.deadLetterExchange != null) {
+            // fila de espera do retry: sem consumers, a mensagem expira e volta pelo dead-letter exchange
+            timers.schedule(() -> expire(q, msg), q.ttlMs, TimeUnit.MILLISECONDS);
+        } else if (q.consumers.isEmpty()) {
+            // fila que ninguém consome (a DLQ): a mensagem fica aqui, é o estado final dela
+            release(msg);
+            msg.parked = true;
+        }
+        dispatch(q);
+    }
+
+    private synchronized void expire(Queue q, Message msg) {
+        if (!q.messages.remove(msg)) return;
+        publish(q.deadLetterExchange, msg.routingKey, msg.props, msg.body, msg.lineage);
+        release(msg);
+    }
+
+    // uma cópia a menos; a última dispara o onSettle (cópia já contada como final não conta de novo)
+    private void release(Message msg) {
+        if (msg.parked) return;
+        Lineage l = msg.lineage;
+        if (--l.copies > 0) return;
+        inflight.remove(l.key);
+        onSettle.accept(l.publishedNanos);
+    }
+
+    // entrega enquanto houver mensagens e algum consumer com espaço no prefetch
+    private void dispatch(Queue q) {
+        while (!q.messages.isEmpty() && !q.consumers.isEmpty()) {
+            Subscription target = null;
+            for (int i = 0; i < q.consumers.size(); i++) {
+                Subscription s = q.consumers.get((q.next + i) % q.consumers.size());
+                if (s.autoAck || s.channel.hasCapacity()) {
+                    target = s;
+                    q.next = (q.next + i + 1) % q.consumers.size();
+                    break;
+                }
+            }
+            if (target == null) return;
+            Message msg = q.messages.pollFirst();
+            long tag = ++target.channel.deliveryTag;
+            if (!target.autoAck) target.channel.unacked.put(tag, new Unacked(q, msg));
+            Delivery delivery = new Delivery(new Envelope(tag, msg.redelivered, msg.exchange, msg.routingKey),
+                    msg.props, msg.body);
+            Subscription s = target;
+            s.channel.dispatcher.execute(() -> {
+                try {
+                    s.callback.handle(s.tag, delivery);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            if (target.autoAck) release(msg);
+        }
+    }
+
+    // ack/reject/nack: libera o prefetch e entrega o que estava esperando nas filas do channel
+    private synchronized void settle(FakeChannel c, long tag, boolean multiple, boolean ack, boolean requeue) {
+        List<Unacked> done = new ArrayList<>();
+        if (multiple) {
+            for (Iterator<Unacked> it = c.unacked.headMap(tag, true).values().iterator(); it.hasNext(); ) {
+                done.add(it.next());
+                it.remove();
+            }
+        } else {
+            Unacked u = c.unacked.remove(tag);
+            if (u == null) throw new IllegalStateException("delivery tag desconhecida: " + tag);
+            done.add(u);
+        }
+        for (Unacked u : done) {
+            if (!ack && requeue) {
+                u.message.redelivered = true;
+                u.queue.messages.addFirst(u.message);
+            } else {
+                release(u.message);
+            }
+        }
+        for (Queue q : queues.values()) {
+            if (!q.messages.isEmpty()) dispatch(q);
+        }
+    }
+
+    private static Object objectMethod(Object proxy, Method m, Object[] a, String kind) {
+        switch (m.getName()) {
+            case "hashCode": return System.identityHashCode(proxy);
+            case "equals": return proxy == a[0];
+            case "toString": return "InMemoryBroker." + kind + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            default: throw new UnsupportedOperationException("InMemoryBroker: " + kind + "." + m.getName());
+        }
+    }
+
+    // ---- channel ----
+
+    private final class FakeChannel implements InvocationHandler {
+        final int number;
+        final ExecutorService dispatcher;
+        final TreeMap<Long, Unacked> unacked = new TreeMap<>();   // guardado pelo monitor do broker
+        long deliveryTag;
+        int prefetch;
+        volatile boolean open = true;
+        Channel proxy;
+
+        FakeChannel(int number) {
+            this.number = number;
+            this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "broker-channel-" + number);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        boolean hasCapacity() {
+            return prefetch <= 0 || unacked.size() < prefetch;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object p, Method m, Object[] a) throws Exception {
+            switch (m.getName()) {
+                case "exchangeDeclare":
+                    synchronized (InMemoryBroker.this) {
+                        exchanges.putIfAbsent((String) a[0], a[1].toString().toLowerCase());
+                    }
+                    return null;
+                case "queueDeclare": {
+                    String name = (String) a[0];
+                    synchronized (InMemoryBroker.this) {
+                        queues.putIfAbsent(name, new Queue(name, a.length > 4 ? (Map<String, Object>) a[4] : null));
+                    }
+                    return new AMQP.Queue.DeclareOk.Builder().queue(name).build();
+                }
+                case "queueBind":
+                    synchronized (InMemoryBroker.this) {
+                        if (!queues.containsKey((String) a[0])) throw new IllegalStateException("fila não declarada: " + a[0]);
+                        bindings.computeIfAbsent((String) a[1], k -> new ArrayList<>())
+                                .add(new Binding((String) a[0], (String) a[2], a.length > 3 ? (Map<String, Object>) a[3] : null));
+                    }
+                    return null;
+                case "basicQos":
+                    synchronized (InMemoryBroker.this) {
+                        prefetch = (Integer) a[a.length == 3 ? 1 : 0];
+                    }
+                    return null;
+                case "basicPublish":
+                    // (exchange, key, props, body) ou (exchange, key, mandatory, props, body)
+                    publish((String) a[0], (String) a[1], (AMQP.BasicProperties) a[a.length - 2], (byte[]) a[a.length - 1]);
+                    return null;
+                case "basicConsume": {
+                    if (a.length != 4 || !(a[2] instanceof DeliverCallback)) break;
+                    String tag = "amq.ctag-" + consumerTags.incrementAndGet();
+                    synchronized (InMemoryBroker.this) {
+                        Queue q = queues.get((String) a[0]);
+                        if (q == null) throw new IllegalStateException("fila não declarada: " + a[0]);
+                        q.consumers.add(new Subscription(tag, this, (DeliverCallback) a[2], (Boolean) a[1]));
+                        dispatch(q);
+                    }
+                    return tag;
+                }
+                case "basicAck":
+                    settle(this, (Long) a[0], (Boolean) a[1], true, false);
+                    return null;
+                case "basicReject":
+                    settle(this, (Long) a[0], false, false, (Boolean) a[1]);
+                    return null;
+                case "basicNack":
+                    settle(this, (Long) a[0], (Boolean) a[1], false, (Boolean) a[2]);
+                    return null;
+                case "getChannelNumber": return number;
+                case "isOpen": return open;
+                case "close": case "abort": open = false; return null;
+                default: break;
+            }
+            return objectMethod(p, m, a, "Channel");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.benchmarks;
+
+import com.example.consumerface.FaceStages;
+import org.openjdk.jmh.annotations.*;
+import smile.classification.Classifier;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KNN.predict (k=3) do smile vs FlatKnn em tamanhos de treino realistas
+ * (400 = sintético, milhares = dataset real de faces).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KnnBenchmark {
+
+    @Param({"400", "5000", "30000"})
+    int trainSize;
+
+    @Param({"smile", "flat"})
+    String engine;
+
+    private Classifier<double[]> model;
+    private double[][] queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        double[][] x = new double[trainSize][];
+        int[] y = new int[trainSize];
+        for (int i = 0; i < trainSize; i++) {
+            x[i] = randomFeature(rnd);
+            y[i] = rnd.nextInt(2);
+        }
+        model = FaceStages.fitKnn(engine, x, y, 3);
+        queries = new double[1024][];
+        for (int i = 0; i < queries.length; i++) queries[i] = randomFeature(rnd);
+    }
+
+    // mesmo espaço das features de face: brilho médio, diferença inferior-superior, razão de vermelho
+    private static double[] randomFeature(Random rnd) {
+        return new double[] { rnd.nextDouble(), rnd.nextDouble() * 0.4 - 0.2, 0.2 + rnd.nextDouble() * 0.3 };
+    }
+
+    @Benchmark
+    public int predict() {
+        double[] q = queries[next++ & (queries.length - 1)];
+        return model.predict(q);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.benchmarks;
+
+import com.example.generator.GeneratorImages;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de produção de uma mensagem no gerador: render Java2D + PNG (renderFaceImage/renderTeamImage)
+ * e só o encode (toPNGBytes) de uma imagem já renderizada.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    private BufferedImage rendered;
+    private int seq;
+
+    @Setup
+    public void setup() throws Exception {
+        rendered = ImageIO.read(new ByteArrayInputStream(GeneratorImages.facePng(true)));
+    }
+
+    @Benchmark
+    public byte[] renderFaceImage() throws Exception {
+        return GeneratorImages.facePng((seq++ & 1) == 0);
+    }
+
+    @Benchmark
+    public byte[] renderTeamImage() throws Exception {
+        return GeneratorImages.teamPng(seq++ & 3);
+    }
+
+    @Benchmark
+    public byte[] toPNGBytes() throws Exception {
+        return GeneratorImages.toPng(rendered);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.benchmarks;
+
+import com.example.consumerteam.TeamStages;
+import com.example.generator.GeneratorImages;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode e extractFeatures do ConsumerTeam para as quatro variantes do gerador (RED/BLUE/GREEN/COR).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TeamPathBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    int team;
+
+    private byte[] png;
+    private BufferedImage decoded;
+
+    @Setup
+    public void setup() throws Exception {
+        png = GeneratorImages.teamPng(team);
+        decoded = TeamStages.decodeImage(png);
+    }
+
+    @Benchmark
+    public BufferedImage decodeImage() throws Exception {
+        return TeamStages.decodeImage(png);
+    }
+
+    @Benchmark
+    public double[] extractFeatures() {
+        return TeamStages.extractFeatures(decoded);
+    }
+
+    @Benchmark
+    public double[] extractFeaturesGeneric() {
+        return TeamStages.extractFeaturesGeneric(decoded);
+    }
+}
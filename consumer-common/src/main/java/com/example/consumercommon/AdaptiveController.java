@@ -0,0 +1,130 @@
+package com.example.consumercommon;
+
+import com.rabbitmq.client.Channel;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controle adaptativo (AIMD) de prefetch + concorrência dos workers.
+ *
+ * A cada intervalo compara o tempo de serviço médio da janela (chegada da entrega -> ack, sem o atraso
+ * simulado <tipo>_PROCESSING_DELAY_MS) com o alvo. O sleep é fixo e não depende da carga: somado ao sinal,
+ * a média ficava sempre perto da linha de base e o limite só subia até o máximo. Sem ele sobra o que
+ * cresce com a concorrência (espera no pool, decode/features/predict disputando CPU, ack):
+ *  - acima do alvo                      -> redução multiplicativa (limite * 0.75)
+ *  - abaixo do alvo e limite saturado   -> aumento aditivo (+1)
+ *  - caso contrário                     -> mantém
+ * Alvo = <tipo>_ADAPTIVE_TARGET_MS quando definido; senão tolerância x menor média já observada
+ * (linha de base sem carga), o que acomoda modelos/mensagens com custos diferentes.
+ * O limite é aplicado no tamanho do pool de plataforma e no basicQos do channel com global=true, de
+ * propósito: o prefetch por consumer (global=false) só vale para consumers criados depois do basicQos,
+ * então mudá-lo em runtime exigiria cancelar e recriar o consumer; o limite do channel vale na hora.
+ * Ele é compartilhado por todos os consumers do channel (um por shard com <tipo>_SHARDS), que é o que se
+ * quer: o pool também é um só. O feedback consome em channel próprio e fica fora do limite. As filas
+ * são clássicas (quorum queues não suportam o prefetch global).
+ */
+public final class AdaptiveController {
+    private final Channel channel;
+    private final ThreadPoolExecutor pool;   // null com virtual threads (não precisa redimensionar)
+    private final int min, max;
+    private final long targetNanos;
+    private final long simulatedNanos;
+    private final double tolerance;
+    private final long intervalMs;
+    private final String tag;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final LongAdder windowSum = new LongAdder();
+    private final LongAdder windowCount = new LongAdder();
+    private volatile int limit;
+    private long baselineNanos = Long.MAX_VALUE;
+
+    public AdaptiveController(Channel channel, ThreadPoolExecutor pool, int initial, int min, int max,
+                       long targetMs, double tolerance, long intervalMs, long simulatedMs, String tag) {
+        this.channel = channel;
+        this.pool = pool;
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMs);
+        this.simulatedNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, simulatedMs));
+        this.tolerance = tolerance;
+        this.intervalMs = intervalMs;
+        this.tag = tag;
+        this.limit = Math.min(this.max, Math.max(this.min, initial));
+    }
+
+    public int limit() { return limit; }
+    public int inFlight() { return inFlight.get(); }
+
+    public void start() throws Exception {
+        apply(limit);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                WorkerExecutors.namedDaemon(tag.toLowerCase() + "-adaptive"));
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // chamada na chegada da entrega (antes de entrar na fila do executor)
+    public void onStart() {
+        int now = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(now, Math::max);
+    }
+
+    // serviceNanos = chegada -> ack; o atraso simulado sai aqui (mensagem com erro nem chega ao sleep)
+    public void onComplete(long serviceNanos) {
+        inFlight.decrementAndGet();
+        windowSum.add(Math.max(0, serviceNanos - simulatedNanos));
+        windowCount.increment();
+    }
+
+    private void tick() throws Exception {
+        long count = windowCount.sumThenReset();
+        long sum = windowSum.sumThenReset();
+        int peak = maxInFlight.getAndSet(inFlight.get());
+        if (count == 0) return;
+
+        long avg = sum / count;
+        baselineNanos = Math.min(baselineNanos, avg);
+        long target = targetNanos > 0 ? targetNanos : (long) (baselineNanos * tolerance);
+
+        int current = limit, next = current;
+        if (avg > target) {
+            next = Math.max(min, (int) (current * 0.75));
+        } else if (peak >= current) {
+            next = Math.min(max, current + 1);
+        }
+        if (next != current) {
+            apply(next);
+            System.out.println(String.format("[%s] adaptive limit %d -> %d (svc avg sem sleep=%.1fms alvo=%.1fms inflight max=%d, %d msgs)",
+                    tag, current, next, avg / 1e6, target / 1e6, peak, count));
+        }
+    }
+
+    private void apply(int next) throws Exception {
+        if (pool != null) {
+            // ordem importa: core nunca pode passar do max
+            if (next > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(next);
+                pool.setCorePoolSize(next);
+            } else {
+                pool.setCorePoolSize(next);
+                pool.setMaximumPoolSize(next);
+            }
+        }
+        synchronized (channel) {
+            channel.basicQos(next, true);
+        }
+        limit = next;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.consumercommon;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Métricas do consumer: histogramas por estágio (parse, decode, features, predict, ack, service),
+ * latência publish->ack (a partir do timestamp da mensagem), throughput e erros.
+ * Exposto em texto do Prometheus num HttpServer embutido do JDK (GET /metrics).
+ */
+public final class ConsumerMetrics {
+    public static final int PARSE = 0, DECODE = 1, FEATURES = 2, PREDICT = 3, ACK = 4, SERVICE = 5;
+    private static final String[] STAGE_NAMES = {"parse", "decode", "features", "predict", "ack", "service"};
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final String prefix;
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private LongSupplier cacheHits = () -> 0, cacheMisses = () -> 0;
+    private final List<String[]> gaugeInfo = new ArrayList<>();
+    private final List<LongSupplier> gauges = new ArrayList<>();
+
+    // throughput calculado entre dois scrapes
+    private long lastScrapeNanos = System.nanoTime(), lastScrapeCount;
+
+    public ConsumerMetrics(String prefix) {
+        this.prefix = prefix;
+        for (int i = 0; i < stages.length; i++) stages[i] = new LatencyHistogram();
+    }
+
+    public void stage(int stage, long nanos) {
+        stages[stage].recordNanos(nanos);
+    }
+
+    // registra o estágio iniciado em 'since' e devolve o instante atual (início do próximo estágio)
+    public long lap(int stage, long since) {
+        long now = System.nanoTime();
+        stages[stage].recordNanos(now - since);
+        return now;
+    }
+
+    // latência fim a fim: timestamp ISO publicado pelo gerador -> agora
+    public void endToEnd(String isoTimestamp) {
+        if (isoTimestamp == null) return;
+        try {
+            Instant published = Instant.parse(isoTimestamp);
+            Instant now = Instant.now();
+            endToEnd.recordMicros((now.getEpochSecond() - published.getEpochSecond()) * 1_000_000L
+                    + (now.getNano() - published.getNano()) / 1000);
+        } catch (RuntimeException ignore) {
+            // timestamp inválido não deve derrubar o processamento
+        }
+    }
+
+    public void processed(int n) { processed.addAndGet(n); }
+    public void error() { errors.incrementAndGet(); }
+
+    public long processedCount() { return processed.get(); }
+    public long errorCount() { return errors.get(); }
+    public LatencyHistogram stageHistogram(int stage) { return stages[stage]; }
+
+    public void cacheCounters(LongSupplier hits, LongSupplier misses) {
+        this.cacheHits = hits;
+        this.cacheMisses = misses;
+    }
+
+    // gauge avaliado a cada scrape (ex.: limite de concorrência atual)
+    public synchronized void gauge(String name, String help, LongSupplier value) {
+        gaugeInfo.add(new String[] { prefix + "_" + name, help });
+        gauges.add(value);
+    }
+
+    public synchronized String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("# HELP ").append(prefix).append("_stage_latency_seconds Tempo por estágio do processamento\n");
+        sb.append("# TYPE ").append(prefix).append("_stage_latency_seconds summary\n");
+        for (int i = 0; i < stages.length; i++) {
+            summary(sb, prefix + "_stage_latency_seconds", "stage=\"" + STAGE_NAMES[i] + "\",", stages[i]);
+        }
+        sb.append("# HELP ").append(prefix).append("_end_to_end_latency_seconds Publicação no gerador -> ack no consumer\n");
+        sb.append("# TYPE ").append(prefix).append("_end_to_end_latency_seconds summary\n");
+        summary(sb, prefix + "_end_to_end_latency_seconds", "", endToEnd);
+
+        long now = System.nanoTime(), count = processed.get();
+        double rate = (count - lastScrapeCount) / Math.max(1e-9, (now - lastScrapeNanos) / 1e9);
+        lastScrapeNanos = now;
+        lastScrapeCount = count;
+
+        counter(sb, prefix + "_messages_total", "Mensagens processadas (ack)", count);
+        counter(sb, prefix + "_errors_total", "Mensagens com falha (nack)", errors.get());
+        counter(sb, prefix + "_cache_hits_total", "Acertos do cache de predições", cacheHits.getAsLong());
+        counter(sb, prefix + "_cache_misses_total", "Faltas do cache de predições", cacheMisses.getAsLong());
+        sb.append("# HELP ").append(prefix).append("_throughput_messages_per_second Taxa desde o scrape anterior\n");
+        sb.append("# TYPE ").append(prefix).append("_throughput_messages_per_second gauge\n");
+        sb.append(prefix).append("_throughput_messages_per_second ").append(fmt(rate)).append('\n');
+        for (int i = 0; i < gauges.size(); i++) {
+            String name = gaugeInfo.get(i)[0];
+            sb.append("# HELP ").append(name).append(' ').append(gaugeInfo.get(i)[1]).append('\n');
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            sb.append(name).append(' ').append(gauges.get(i).getAsLong()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void summary(StringBuilder sb, String name, String labels, LatencyHistogram h) {
+        double[] p = h.percentilesMicros(QUANTILES);
+        for (int q = 0; q < QUANTILES.length; q++) {
+            sb.append(name).append('{').append(labels).append("quantile=\"").append(QUANTILES[q]).append("\"} ")
+              .append(Double.isNaN(p[q]) ? "NaN" : fmt(p[q] / 1e6)).append('\n');
+        }
+        String plain = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        sb.append(name).append("_sum").append(plain).append(' ').append(fmt(h.sumMicros() / 1e6)).append('\n');
+        sb.append(name).append("_count").append(plain).append(' ').append(h.count()).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String fmt(double v) {
+        return String.format(Locale.ROOT, "%.6f", v);
+    }
+
+    /** Sobe o endpoint /metrics; port <= 0 desliga. */
+    public HttpServer serve(int port) throws IOException {
+        if (port <= 0) return null;
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, prefix + "-metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        System.out.println("Métricas em http://0.0.0.0:" + port + "/metrics");
+        return server;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.consumercommon;
+
+import com.rabbitmq.client.Delivery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estágio de micro-batch: junta até maxBatch entregas ou espera no máximo maxWaitMs
+ * (contados a partir da primeira entrega do lote) e repassa o lote ao handler.
+ * Roda numa única thread, então os lotes saem na ordem de entrega do channel
+ * (necessário para o basicAck(lastTag, multiple=true)).
+ */
+public final class DeliveryBatcher implements Runnable {
+
+    public interface BatchHandler {
+        void handle(List<Delivery> batch) throws Exception;
+    }
+
+    private final BlockingQueue<Delivery> pending = new LinkedBlockingQueue<>();
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BatchHandler handler;
+
+    public DeliveryBatcher(int maxBatch, long maxWaitMs, BatchHandler handler) {
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.handler = handler;
+    }
+
+    public void offer(Delivery delivery) {
+        pending.add(delivery);
+    }
+
+    public Thread start(String name) {
+        Thread t = new Thread(this, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    @Override
+    public void run() {
+        List<Delivery> batch = new ArrayList<>(maxBatch);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                // drena o que já chegou sem bloquear, depois espera até o prazo
+                pending.drainTo(batch, maxBatch - batch.size());
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    Delivery next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                try {
+                    handler.handle(batch);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
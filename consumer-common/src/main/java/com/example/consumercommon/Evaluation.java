@@ -0,0 +1,133 @@
+package com.example.consumercommon;
+
+import smile.classification.Classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Avaliação de um classificador: predições em paralelo no pool informado, cada tarefa com a sua
+ * matriz de confusão ([pred][real], sem contenção), somadas no fim. Também faz validação cruzada
+ * k-fold (mesmo embaralhamento para qualquer nº de threads) e expõe acurácia, precisão/recall por
+ * classe e predições por segundo (só o tempo de predict, sem o treino).
+ */
+public final class Evaluation {
+    public final int[][] confusion;   // [pred][real]
+    public final int total;
+    public final long predictNanos;
+    public final List<Double> foldAccuracies = new ArrayList<>();
+
+    private Evaluation(int[][] confusion, long predictNanos) {
+        this.confusion = confusion;
+        this.predictNanos = predictNanos;
+        int n = 0;
+        for (int[] row : confusion) for (int v : row) n += v;
+        this.total = n;
+    }
+
+    public static Evaluation run(Classifier<double[]> model, double[][] x, int[] y, int numClasses, ForkJoinPool pool) {
+        // blocos de tamanho fixo: poucas matrizes a somar, mas ainda muitas tarefas para balancear
+        int chunk = Math.max(64, x.length / (pool.getParallelism() * 8));
+        int chunks = (x.length + chunk - 1) / chunk;
+        long start = System.nanoTime();
+        int[][] cm = pool.submit(() -> IntStream.range(0, chunks).parallel().mapToObj(c -> {
+            int[][] local = new int[numClasses][numClasses];
+            for (int i = c * chunk, end = Math.min(x.length, i + chunk); i < end; i++) {
+                local[model.predict(x[i])][y[i]]++;
+            }
+            return local;
+        }).reduce(Evaluation::sum).orElseGet(() -> new int[numClasses][numClasses])).join();
+        return new Evaluation(cm, System.nanoTime() - start);
+    }
+
+    /** k-fold: cada amostra é testada exatamente uma vez por um modelo que não a viu no treino. */
+    public static Evaluation crossValidate(double[][] x, int[] y, int numClasses, int folds, long seed,
+                                    BiFunction<double[][], int[], Classifier<double[]>> trainer, ForkJoinPool pool) {
+        int n = x.length;
+        folds = Math.max(2, Math.min(folds, n));
+        int[] order = IntStream.range(0, n).toArray();
+        Random rnd = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        int[][] cm = new int[numClasses][numClasses];
+        long nanos = 0;
+        List<Double> accuracies = new ArrayList<>();
+        for (int f = 0; f < folds; f++) {
+            int from = (int) ((long) n * f / folds), to = (int) ((long) n * (f + 1) / folds);
+            double[][] xTrain = new double[n - (to - from)][], xTest = new double[to - from][];
+            int[] yTrain = new int[xTrain.length], yTest = new int[xTest.length];
+            for (int i = 0, tr = 0, te = 0; i < n; i++) {
+                int s = order[i];
+                if (i >= from && i < to) {
+                    xTest[te] = x[s];
+                    yTest[te++] = y[s];
+                } else {
+                    xTrain[tr] = x[s];
+                    yTrain[tr++] = y[s];
+                }
+            }
+            Evaluation fold = run(trainer.apply(xTrain, yTrain), xTest, yTest, numClasses, pool);
+            sum(cm, fold.confusion);
+            nanos += fold.predictNanos;
+            accuracies.add(fold.accuracy());
+        }
+        Evaluation merged = new Evaluation(cm, nanos);
+        merged.foldAccuracies.addAll(accuracies);
+        return merged;
+    }
+
+    // soma em "into": cada matriz local entra numa única soma, então pode ser reaproveitada
+    private static int[][] sum(int[][] into, int[][] other) {
+        for (int p = 0; p < into.length; p++) {
+            for (int r = 0; r < into.length; r++) into[p][r] += other[p][r];
+        }
+        return into;
+    }
+
+    public double accuracy() {
+        int correct = 0;
+        for (int c = 0; c < confusion.length; c++) correct += confusion[c][c];
+        return total == 0 ? 0.0 : correct / (double) total;
+    }
+
+    // das previstas como c, quantas eram c
+    public double precision(int c) {
+        int predicted = 0;
+        for (int r = 0; r < confusion.length; r++) predicted += confusion[c][r];
+        return predicted == 0 ? 0.0 : confusion[c][c] / (double) predicted;
+    }
+
+    // das que eram c, quantas foram previstas como c
+    public double recall(int c) {
+        int actual = 0;
+        for (int p = 0; p < confusion.length; p++) actual += confusion[p][c];
+        return actual == 0 ? 0.0 : confusion[c][c] / (double) actual;
+    }
+
+    public double predictionsPerSecond() {
+        return predictNanos == 0 ? 0.0 : total / (predictNanos / 1e9);
+    }
+
+    public double foldStdDev() {
+        if (foldAccuracies.size() < 2) return 0.0;
+        double mean = foldAccuracies.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double var = foldAccuracies.stream().mapToDouble(a -> (a - mean) * (a - mean)).sum() / (foldAccuracies.size() - 1);
+        return Math.sqrt(var);
+    }
+
+    /** Precisão/recall por classe numa linha: "HAPPY p=0.91 r=0.88, SAD ...". */
+    public String perClass(String[] labels) {
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < confusion.length; c++) {
+            if (c > 0) sb.append(", ");
+            sb.append(String.format("%s p=%.3f r=%.3f", labels[c], precision(c), recall(c)));
+        }
+        return sb.toString();
+    }
+}
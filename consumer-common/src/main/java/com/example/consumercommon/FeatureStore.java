@@ -0,0 +1,158 @@
+package com.example.consumercommon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache persistente de features do dataset, em arquivo binário mapeado em memória.
+ * Chave = caminho da imagem + tamanho + mtime; imagens inalteradas são lidas direto do
+ * mapeamento, só as novas/alteradas passam por ImageIO.read + extractFeatures. Imagens ilegíveis
+ * também ficam registradas (sem features), para não serem decodificadas de novo a cada início nem
+ * forçarem a regravação do arquivo enquanto continuarem iguais.
+ *
+ * Formato (big-endian): magic "FST2", version, dim, count, e para cada registro:
+ * pathLen(u16) path(UTF-8) size(i64) mtime(i64) flags(u8, bit0 = ilegível) features(dim x f64, só se legível).
+ */
+public final class FeatureStore {
+    private static final int MAGIC = 0x46535432; // "FST2"
+    private static final int UNREADABLE_FLAG = 1;
+    /** Devolvido por lookup() para imagem já conhecida como ilegível (mesmo tamanho e mtime). */
+    public static final double[] UNREADABLE = new double[0];
+
+    private static final class Entry {
+        final long size, mtime;
+        final int offset;          // posição das features no arquivo mapeado (-1 = em memória)
+        final double[] features;   // features novas ainda não gravadas; UNREADABLE = imagem ilegível
+        Entry(long size, long mtime, int offset, double[] features) {
+            this.size = size; this.mtime = mtime; this.offset = offset; this.features = features;
+        }
+    }
+
+    private final Path file;
+    private final int dim, version;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> seen = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger();
+    private MappedByteBuffer mapped;
+
+    private FeatureStore(Path file, int dim, int version) {
+        this.file = file; this.dim = dim; this.version = version;
+    }
+
+    /** Abre (ou cria vazio) o store; arquivo inválido ou de outra versão é ignorado e reescrito no save(). */
+    public static FeatureStore open(Path file, int dim, int version) {
+        FeatureStore store = new FeatureStore(file, dim, version);
+        if (!Files.isRegularFile(file)) return store;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < 16 || buf.getInt() != MAGIC || buf.getInt() != version || buf.getInt() != dim) {
+                System.out.println("Feature store " + file + " incompatível -> será recriado.");
+                return store;
+            }
+            int count = buf.getInt();
+            byte[] pathBuf = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int len = buf.getShort() & 0xffff;
+                if (pathBuf.length < len) pathBuf = new byte[len];
+                buf.get(pathBuf, 0, len);
+                String path = new String(pathBuf, 0, len, StandardCharsets.UTF_8);
+                long size = buf.getLong(), mtime = buf.getLong();
+                if ((buf.get() & UNREADABLE_FLAG) != 0) {
+                    store.entries.put(path, new Entry(size, mtime, -1, UNREADABLE));
+                    continue;
+                }
+                store.entries.put(path, new Entry(size, mtime, buf.position(), null));
+                buf.position(buf.position() + dim * Double.BYTES);
+            }
+            store.mapped = buf;
+        } catch (Exception e) {
+            System.out.println("Falha ao ler feature store " + file + ": " + e.getMessage() + " -> será recriado.");
+            store.entries.clear();
+        }
+        return store;
+    }
+
+    public static String key(Path image) {
+        return image.toAbsolutePath().normalize().toString();
+    }
+
+    /** Features em cache se tamanho e mtime ainda batem (UNREADABLE se a imagem era ilegível); null se precisa recalcular. */
+    public double[] lookup(Path image, BasicFileAttributes attrs) {
+        String key = key(image);
+        seen.put(key, Boolean.TRUE);
+        Entry e = entries.get(key);
+        if (e == null || e.size != attrs.size() || e.mtime != attrs.lastModifiedTime().toMillis()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.features != null ? e.features : readMapped(e.offset);
+    }
+
+    /** features null = imagem ilegível (tombstone até mudar tamanho ou mtime). */
+    public void record(Path image, BasicFileAttributes attrs, double[] features) {
+        entries.put(key(image), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), -1,
+                features != null ? features : UNREADABLE));
+    }
+
+    private double[] readMapped(int offset) {
+        double[] f = new double[dim];
+        for (int i = 0; i < dim; i++) f[i] = mapped.getDouble(offset + i * Double.BYTES);
+        return f;
+    }
+
+    public int hits() { return hits.get(); }
+    public int misses() { return misses.get(); }
+
+    /** Regrava o arquivo (só imagens vistas nesta carga) se algo mudou; troca atômica via arquivo temporário. */
+    public void save() throws IOException {
+        boolean dirty = misses.get() > 0 || entries.size() != seen.size();
+        if (!dirty) return;
+        entries.keySet().retainAll(seen.keySet());
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024).order(ByteOrder.BIG_ENDIAN);
+            buf.putInt(MAGIC).putInt(version).putInt(dim).putInt(entries.size());
+            for (Map.Entry<String, Entry> me : entries.entrySet()) {
+                byte[] path = me.getKey().getBytes(StandardCharsets.UTF_8);
+                int recLen = 2 + path.length + 17 + dim * Double.BYTES;
+                if (buf.remaining() < recLen) {
+                    flush(ch, buf);
+                    if (buf.capacity() < recLen) buf = ByteBuffer.allocate(recLen);
+                }
+                Entry e = me.getValue();
+                buf.putShort((short) path.length).put(path).putLong(e.size).putLong(e.mtime);
+                if (e.features == UNREADABLE) {
+                    buf.put((byte) UNREADABLE_FLAG);
+                    continue;
+                }
+                double[] f = e.features != null ? e.features : readMapped(e.offset);
+                buf.put((byte) 0);
+                for (double v : f) buf.putDouble(v);
+            }
+            flush(ch, buf);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+}
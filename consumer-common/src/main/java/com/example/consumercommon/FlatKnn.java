@@ -0,0 +1,149 @@
+package com.example.consumercommon;
+
+import smile.classification.Classifier;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * k-NN próprio sobre uma matriz plana: um único double[] em layout por coluna
+ * (feature d da amostra i em data[d * capacity + i]) + int[] de rótulos.
+ * O laço de distância percorre cada coluna de forma contígua, o que o C2 vetoriza (SIMD)
+ * sem depender da Vector API. Mesma regra de voto do smile.classification.KNN:
+ * distância euclidiana, maioria entre os k vizinhos, empate -> menor rótulo. Vizinhos à mesma
+ * distância do k-ésimo: fica o de menor índice (o smile decide pela ordem da KD-tree).
+ *
+ * Com capacity > amostras do treino aceita inserções online (insert) sem re-treino: cada uma custa
+ * O(dim) escritas sob o write lock; o predict segura o read lock durante a varredura.
+ */
+public final class FlatKnn implements Classifier<double[]> {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] data;
+    private final int[] labels;
+    private final int dim, k, numClasses, capacity, baseSize;
+    private int n;
+    private long evictions;   // cursor do FIFO de substituição quando cheio
+    private final transient StampedLock lock = new StampedLock();
+
+    private static final ThreadLocal<double[]> DIST = ThreadLocal.withInitial(() -> new double[0]);
+
+    private FlatKnn(double[] data, int[] labels, int n, int dim, int k, int numClasses, int capacity) {
+        this.data = data; this.labels = labels; this.n = n; this.dim = dim;
+        this.k = k; this.numClasses = numClasses; this.capacity = capacity; this.baseSize = n;
+    }
+
+    public static FlatKnn fit(double[][] x, int[] y, int k) {
+        return fit(x, y, k, x.length);
+    }
+
+    // capacity > x.length reserva espaço para inserções online (mesmo stride por coluna)
+    public static FlatKnn fit(double[][] x, int[] y, int k, int capacity) {
+        if (x.length < k) throw new IllegalArgumentException("Amostras insuficientes para k=" + k + ": " + x.length);
+        int n = x.length, dim = x[0].length;
+        capacity = Math.max(capacity, n);
+        double[] data = new double[dim * capacity];
+        int[] labels = new int[capacity];
+        int maxLabel = 0;
+        for (int i = 0; i < n; i++) {
+            for (int d = 0; d < dim; d++) data[d * capacity + i] = x[i][d];
+            labels[i] = y[i];
+            maxLabel = Math.max(maxLabel, y[i]);
+        }
+        return new FlatKnn(data, labels, n, dim, k, maxLabel + 1, capacity);
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return n;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int capacity() { return capacity; }
+
+    /**
+     * Insere uma amostra rotulada sem re-treino. Com a matriz cheia sobrescreve a mais antiga (FIFO):
+     * keepBase = só entre as inseridas online (o treino original fica), senão entre todas.
+     * false se o rótulo não existe no modelo ou não há espaço para inserção.
+     */
+    public boolean insert(double[] x, int label, boolean keepBase) {
+        if (label < 0 || label >= numClasses || x.length != dim) return false;
+        long stamp = lock.writeLock();
+        try {
+            int slot;
+            if (n < capacity) {
+                slot = n++;
+            } else {
+                int from = keepBase ? baseSize : 0;
+                if (from >= capacity) return false;
+                slot = from + (int) (evictions++ % (capacity - from));
+            }
+            for (int d = 0; d < dim; d++) data[d * capacity + slot] = x[d];
+            labels[slot] = label;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int predict(double[] q) {
+        long stamp = lock.readLock();
+        try {
+            return predictLocked(q);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int predictLocked(double[] q) {
+        int n = this.n;
+        double[] dist = DIST.get();
+        if (dist.length < n) {
+            dist = new double[n];
+            DIST.set(dist);
+        }
+        // distância ao quadrado, coluna a coluna (mesma ordem de soma do smile -> mesmos valores)
+        double q0 = q[0];
+        for (int i = 0; i < n; i++) {
+            double t = data[i] - q0;
+            dist[i] = t * t;
+        }
+        for (int d = 1; d < dim; d++) {
+            double qd = q[d];
+            int base = d * capacity;
+            for (int i = 0; i < n; i++) {
+                double t = data[base + i] - qd;
+                dist[i] += t * t;
+            }
+        }
+
+        // seleção dos k menores (inserção ordenada; k é pequeno)
+        int[] bestIdx = new int[k];
+        double[] bestDist = new double[k];
+        int found = 0;
+        for (int i = 0; i < n; i++) {
+            double di = dist[i];
+            if (found == k && di >= bestDist[k - 1]) continue;
+            int pos = found < k ? found++ : k - 1;
+            while (pos > 0 && bestDist[pos - 1] > di) {
+                bestDist[pos] = bestDist[pos - 1];
+                bestIdx[pos] = bestIdx[pos - 1];
+                pos--;
+            }
+            bestDist[pos] = di;
+            bestIdx[pos] = i;
+        }
+        if (k == 1) return labels[bestIdx[0]];
+
+        int[] votes = new int[numClasses];
+        for (int j = 0; j < k; j++) votes[labels[bestIdx[j]]]++;
+        int best = 0;
+        for (int c = 1; c < numClasses; c++) {
+            if (votes[c] > votes[best]) best = c;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.consumercommon;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Classificador hospedado no consumer-runtime: cada um tem a sua fila, o seu modelo e as suas
+ * features, e o runtime cuida do resto (conexão, threads, decode, ack, retry e métricas).
+ * Os consumers existentes publicam o seu (FaceClassifier, TeamClassifier) nos próprios módulos.
+ */
+public interface ImageClassifier {
+    /** Nome curto ("face", "team"): prefixo das variáveis de ambiente e label das métricas. */
+    String name();
+
+    String queue();
+
+    String routingKey();
+
+    /** Treina (ou carrega) o modelo com a configuração do próprio consumer; chamado uma vez antes de consumir. */
+    void train();
+
+    double[] extractFeatures(BufferedImage img);
+
+    /**
+     * Modelo ativo: classificador, nomes das classes e origem (DATASET, SYN) numa só referência.
+     * Quem classifica lê uma vez por mensagem e usa os três dessa mesma instância; um hot reload
+     * no meio não mistura a predição de um modelo com os rótulos de outro.
+     */
+    ModelSnapshot activeModel();
+}
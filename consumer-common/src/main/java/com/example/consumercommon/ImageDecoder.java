@@ -0,0 +1,81 @@
+package com.example.consumercommon;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decode das imagens do dataset com limite de resolução. As features são médias de cor/linhas, então
+ * uma foto de vários megapixels não precisa virar um raster completo: com maxSide > 0 o ImageReader
+ * lê só o cabeçalho, escolhe um passo de subamostragem (ImageReadParam.setSourceSubsampling) que deixa
+ * o maior lado >= maxSide e decodifica direto nessa resolução — o raster em memória encolhe ~passo².
+ * maxSide <= 0 = ImageIO.read completo (comportamento anterior).
+ */
+public final class ImageDecoder {
+    private final int maxSide;
+    private final AtomicLong images = new AtomicLong(), nanos = new AtomicLong(), pixels = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+
+    // bytes alocados pela thread (HotSpot); null em JVMs sem a extensão -> relatório sem essa coluna
+    private static final com.sun.management.ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+                    ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+    public ImageDecoder(int maxSide) {
+        this.maxSide = maxSide;
+    }
+
+    public int maxSide() { return maxSide; }
+
+    /** null se o formato não é suportado (mesmo contrato do ImageIO.read). */
+    public BufferedImage read(Path file) throws IOException {
+        long thread = Thread.currentThread().getId();
+        long allocBefore = THREADS != null ? THREADS.getThreadAllocatedBytes(thread) : 0;
+        long start = System.nanoTime();
+        BufferedImage img = maxSide > 0 ? readSubsampled(file) : ImageIO.read(file.toFile());
+        if (img != null) {
+            nanos.addAndGet(System.nanoTime() - start);
+            if (THREADS != null) allocated.addAndGet(THREADS.getThreadAllocatedBytes(thread) - allocBefore);
+            pixels.addAndGet((long) img.getWidth() * img.getHeight());
+            images.incrementAndGet();
+        }
+        return img;
+    }
+
+    private BufferedImage readSubsampled(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int step = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / maxSide);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1) param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public String describe() {
+        return maxSide > 0 ? "reduzido (maior lado >= " + maxSide + "px)" : "completo";
+    }
+
+    public String stats() {
+        long n = images.get();
+        if (n == 0) return "nenhuma imagem decodificada";
+        return String.format("%d imagens, %.2f ms/imagem, %.0f pixels/imagem", n, nanos.get() / 1e6 / n,
+                pixels.get() / (double) n) +
+                (THREADS != null ? String.format(", %.1f MB alocados/imagem", allocated.get() / (double) n / (1 << 20)) : "");
+    }
+}
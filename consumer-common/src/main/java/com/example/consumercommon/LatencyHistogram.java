@@ -0,0 +1,94 @@
+package com.example.consumercommon;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latência log-linear (estilo HdrHistogram) em microssegundos, sem alocação no record().
+ * Valores < 64us têm bucket exato; acima disso cada potência de 2 é dividida em 32 sub-buckets
+ * (erro relativo <= ~3%). Os percentis cobrem uma janela deslizante de SLOTS x SLOT_MILLIS;
+ * count/sum são acumulados desde o início (semântica de summary do Prometheus).
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;
+    private static final int MAX_SHIFT = 40;                       // até ~2^45 us
+    static final int BUCKETS = 64 + MAX_SHIFT * SUB_BUCKETS;
+    static final int SLOTS = 6;
+    static final long SLOT_MILLIS = 10_000;                        // janela de 60s
+
+    private final AtomicLongArray[] slots = new AtomicLongArray[SLOTS];
+    private final AtomicLong[] slotEpoch = new AtomicLong[SLOTS];
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new AtomicLongArray(BUCKETS);
+            slotEpoch[i] = new AtomicLong(-1);
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) micros = 0;
+        long epoch = System.currentTimeMillis() / SLOT_MILLIS;
+        int s = (int) (epoch % SLOTS);
+        long seen = slotEpoch[s].get();
+        if (seen != epoch && slotEpoch[s].compareAndSet(seen, epoch)) {
+            // slot reaproveitado de uma janela antiga -> zera (corrida aqui só perde poucas amostras)
+            AtomicLongArray a = slots[s];
+            for (int i = 0; i < BUCKETS; i++) a.set(i, 0);
+        }
+        slots[s].incrementAndGet(index(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+    }
+
+    public long count() { return count.get(); }
+    public long sumMicros() { return sumMicros.get(); }
+
+    /** Percentis (0..1) na janela atual, em microssegundos; NaN se a janela estiver vazia. */
+    public double[] percentilesMicros(double... qs) {
+        long[] merged = new long[BUCKETS];
+        long oldest = System.currentTimeMillis() / SLOT_MILLIS - (SLOTS - 1);
+        long total = 0;
+        for (int s = 0; s < SLOTS; s++) {
+            if (slotEpoch[s].get() < oldest) continue;
+            AtomicLongArray a = slots[s];
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = a.get(i);
+                merged[i] += c;
+                total += c;
+            }
+        }
+        double[] out = new double[qs.length];
+        for (int q = 0; q < qs.length; q++) {
+            if (total == 0) { out[q] = Double.NaN; continue; }
+            long rank = Math.max(1, (long) Math.ceil(qs[q] * total));
+            long acc = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                acc += merged[i];
+                if (acc >= rank) { out[q] = midpoint(i); break; }
+            }
+        }
+        return out;
+    }
+
+    static int index(long v) {
+        if (v < 64) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - 5;      // v >>> shift fica em [32,63]
+        if (shift > MAX_SHIFT) return BUCKETS - 1;
+        return 64 + (shift - 1) * SUB_BUCKETS + (int) (v >>> shift) - SUB_BUCKETS;
+    }
+
+    static double midpoint(int idx) {
+        if (idx < 64) return idx;
+        int shift = (idx - 64) / SUB_BUCKETS + 1;
+        long sub = (idx - 64) % SUB_BUCKETS + SUB_BUCKETS;
+        long lo = sub << shift, hi = ((sub + 1) << shift) - 1;
+        return (lo + hi) / 2.0;
+    }
+}
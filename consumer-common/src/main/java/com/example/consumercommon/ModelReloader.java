@@ -0,0 +1,225 @@
+package com.example.consumercommon;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Retreino em background: o novo modelo é treinado numa thread própria, fora do hot path, e só é
+ * publicado (swap atômico) se a acurácia no split de teste for >= mínimo configurado e não cair mais
+ * que a tolerância em relação ao modelo DATASET atual. Disparos: início do consumer, mudanças no
+ * diretório do dataset (WatchService, com debounce para cópias de muitos arquivos) e POST /admin/reload.
+ * Pedidos durante um treino são agrupados num único treino seguinte.
+ *
+ * O /admin/reload fica num HttpServer próprio, por padrão só em 127.0.0.1 (a porta de métricas é
+ * publicada pelo compose; a de admin não), com token opcional e recusa de pedidos enquanto há treino
+ * na fila/em andamento ou antes do intervalo mínimo desde o último aceito: cada reload é um retreino
+ * completo do dataset.
+ */
+public final class ModelReloader {
+    private final Supplier<ModelSnapshot> trainer;   // null = dataset indisponível
+    private final Supplier<ModelSnapshot> current;
+    private final Consumer<ModelSnapshot> publish;
+    private final double minAccuracy, tolerance;
+    private final long debounceMs;
+    private final String tag;
+
+    private final ExecutorService worker;
+    private final AtomicBoolean queued = new AtomicBoolean(), running = new AtomicBoolean();
+    private final AtomicLong lastAdminReload = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong(), rejected = new AtomicLong();
+
+    public ModelReloader(Supplier<ModelSnapshot> trainer, Supplier<ModelSnapshot> current, Consumer<ModelSnapshot> publish,
+                  double minAccuracy, double tolerance, long debounceMs, String tag) {
+        this.trainer = trainer;
+        this.current = current;
+        this.publish = publish;
+        this.minAccuracy = minAccuracy;
+        this.tolerance = tolerance;
+        this.debounceMs = debounceMs;
+        this.tag = tag;
+        this.worker = Executors.newSingleThreadExecutor(WorkerExecutors.namedDaemon(tag.toLowerCase() + "-model-reload"));
+    }
+
+    public long reloads() { return reloads.get(); }
+    public long rejected() { return rejected.get(); }
+
+    public void requestReload(String reason) {
+        // já existe um treino na fila: ele vai enxergar os mesmos arquivos
+        if (!queued.compareAndSet(false, true)) return;
+        worker.execute(() -> {
+            running.set(true);
+            queued.set(false);
+            try {
+                reload(reason);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void reload(String reason) {
+        System.out.println("[" + tag + "] retreinando modelo em background (" + reason + ")");
+        long start = System.nanoTime();
+        ModelSnapshot candidate;
+        try {
+            candidate = trainer.get();
+        } catch (RuntimeException e) {
+            System.out.println("[" + tag + "] falha no retreino: " + e + " -> mantendo modelo atual");
+            return;
+        }
+        if (candidate == null) {
+            System.out.println("[" + tag + "] dataset indisponível -> mantendo modelo atual");
+            return;
+        }
+        ModelSnapshot active = current.get();
+        String veto = validate(candidate, active);
+        if (veto != null) {
+            rejected.incrementAndGet();
+            System.out.println("[" + tag + "] modelo novo rejeitado: " + veto);
+            return;
+        }
+        publish.accept(candidate);
+        reloads.incrementAndGet();
+        System.out.println(String.format("[%s] modelo trocado %s -> %s (acurácia teste=%.3f, treino %.1fs)",
+                tag, active == null ? "-" : active.tag, candidate.tag, candidate.accuracy, (System.nanoTime() - start) / 1e9));
+    }
+
+    private String validate(ModelSnapshot candidate, ModelSnapshot active) {
+        if (!(candidate.accuracy >= minAccuracy)) {
+            return String.format("acurácia %.3f abaixo do mínimo %.3f", candidate.accuracy, minAccuracy);
+        }
+        // só compara com outro modelo do dataset (o sintético tem outras classes/escala)
+        if (active != null && "DATASET".equals(active.tag) && candidate.accuracy < active.accuracy - tolerance) {
+            return String.format("acurácia %.3f < atual %.3f - tolerância %.3f", candidate.accuracy, active.accuracy, tolerance);
+        }
+        return null;
+    }
+
+    /** Observa o diretório do dataset (e subdiretórios) e pede retreino após debounceMs sem novos eventos. */
+    public void watch(Path baseDir) {
+        if (!Files.isDirectory(baseDir)) {
+            System.out.println("[" + tag + "] " + baseDir + " não existe -> sem watch do dataset");
+            return;
+        }
+        WatchService ws;
+        try {
+            ws = FileSystems.getDefault().newWatchService();
+            register(ws, baseDir);
+        } catch (IOException e) {
+            System.out.println("[" + tag + "] watch do dataset indisponível: " + e.getMessage());
+            return;
+        }
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = ws.take();
+                    // rajada de eventos (cópia de muitos arquivos) -> espera ficar quieto
+                    while (key != null) {
+                        for (WatchEvent<?> ev : key.pollEvents()) {
+                            if (ev.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                                Path child = ((Path) key.watchable()).resolve((Path) ev.context());
+                                if (Files.isDirectory(child)) register(ws, child);
+                            }
+                        }
+                        key.reset();
+                        key = ws.poll(debounceMs, TimeUnit.MILLISECONDS);
+                    }
+                    requestReload("dataset alterado em " + baseDir);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                System.out.println("[" + tag + "] watch do dataset encerrado: " + e.getMessage());
+            }
+        }, tag.toLowerCase() + "-dataset-watch");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("[" + tag + "] observando " + baseDir + " (debounce " + debounceMs + "ms)");
+    }
+
+    private static void register(WatchService ws, Path dir) throws IOException {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path d : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                d.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    /**
+     * Sobe POST /admin/reload em bind:port (port <= 0 desliga). Com token não vazio exige o header
+     * X-Admin-Token; fora do loopback o token é obrigatório (sem ele o admin não sobe); 409 com treino na fila ou em andamento, 429 antes de minIntervalMs do último aceito.
+     */
+    public HttpServer serveAdmin(String bind, int port, String token, long minIntervalMs) throws IOException {
+        if (port <= 0) return null;
+        byte[] expected = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+        InetSocketAddress address = new InetSocketAddress(bind, port);
+        if (expected == null && (address.isUnresolved() || !address.getAddress().isLoopbackAddress())) {
+            System.out.println("[" + tag + "] admin em " + bind + " sem token -> /admin/reload desligado");
+            return null;
+        }
+        long minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/admin/reload", exchange -> {
+            int status;
+            String body;
+            String given = exchange.getRequestHeaders().getFirst("X-Admin-Token");
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                status = 405;
+                body = "use POST\n";
+            } else if (expected != null && (given == null
+                    || !MessageDigest.isEqual(expected, given.getBytes(StandardCharsets.UTF_8)))) {
+                status = 401;
+                body = "token inválido\n";
+            } else if (queued.get() || running.get()) {
+                status = 409;
+                body = "retreino já em andamento\n";
+            } else if (!admitAdmin(minIntervalNanos)) {
+                status = 429;
+                body = "reload recente, aguarde " + minIntervalMs + "ms entre pedidos\n";
+            } else {
+                requestReload("admin");
+                status = 202;
+                body = "reload agendado\n";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(WorkerExecutors.namedDaemon(tag.toLowerCase() + "-admin-http")));
+        server.start();
+        System.out.println("[" + tag + "] admin em http://" + bind + ":" + port + "/admin/reload"
+                + (expected != null ? " (com token)" : ""));
+        return server;
+    }
+
+    // no máximo um reload via admin a cada minIntervalNanos
+    private boolean admitAdmin(long minIntervalNanos) {
+        long now = System.nanoTime();
+        long last = lastAdminReload.get();
+        if (last != 0 && now - last < minIntervalNanos) return false;
+        return lastAdminReload.compareAndSet(last, now);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.consumercommon;
+
+import smile.classification.Classifier;
+
+/**
+ * Modelo publicado para o hot path: classificador, nomes das classes e origem trocados juntos
+ * por uma única referência atômica. Imutável: cada mensagem (ou lote) lê uma vez e usa a mesma
+ * instância até o ack (o FlatKnn ainda pode receber amostras de feedback, ver {@link OnlineLearner}).
+ * cacheGeneration amarra as entradas do PredictionCache a este modelo.
+ */
+public final class ModelSnapshot {
+    public final Classifier<double[]> classifier;
+    public final String[] labels;
+    public final String tag;             // DATASET ou SYN
+    public final double accuracy;        // acurácia no split de teste (NaN no sintético)
+    public final long cacheGeneration;
+
+    public ModelSnapshot(Classifier<double[]> classifier, String[] labels, String tag, double accuracy) {
+        this(classifier, labels, tag, accuracy, 0);
+    }
+
+    private ModelSnapshot(Classifier<double[]> classifier, String[] labels, String tag, double accuracy, long cacheGeneration) {
+        this.classifier = classifier;
+        this.labels = labels;
+        this.tag = tag;
+        this.accuracy = accuracy;
+        this.cacheGeneration = cacheGeneration;
+    }
+
+    public ModelSnapshot withCacheGeneration(long generation) {
+        return new ModelSnapshot(classifier, labels, tag, accuracy, generation);
+    }
+
+    public String label(int prediction) {
+        return labels[prediction];
+    }
+
+    // rótulo do feedback: nome da classe (sem diferenciar maiúsculas) ou o índice; -1 se não existe
+    public int labelIndex(String name) {
+        if (name == null) return -1;
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(name.trim())) return i;
+        }
+        try {
+            int i = Integer.parseInt(name.trim());
+            return i >= 0 && i < labels.length ? i : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
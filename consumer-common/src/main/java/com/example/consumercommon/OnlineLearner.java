@@ -0,0 +1,67 @@
+package com.example.consumercommon;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aprendizado online pela fila de feedback: as features de cada imagem rotulada entram direto no
+ * FlatKnn ativo (insert O(dim), sem re-treino). capacity = vagas reservadas no modelo além do treino;
+ * cheio, a amostra mais antiga é substituída — eviction "feedback" só entre as de feedback (o treino
+ * original fica), "oldest" entre todas. As últimas capacity amostras ficam guardadas aqui para serem
+ * reaplicadas quando o hot reload publica um modelo novo. Chamado sempre com o lock do consumer.
+ */
+public final class OnlineLearner {
+    public final int capacity;
+    public final boolean keepBase;
+
+    private final double[][] recentX;
+    private final String[] recentLabels;
+    private int recentNext, recentSize;
+
+    private final AtomicLong inserted = new AtomicLong(), rejected = new AtomicLong();
+    private long insertNanos;
+
+    public OnlineLearner(int capacity, boolean keepBase) {
+        this.capacity = Math.max(1, capacity);
+        this.keepBase = keepBase;
+        this.recentX = new double[this.capacity][];
+        this.recentLabels = new String[this.capacity];
+    }
+
+    public long inserted() { return inserted.get(); }
+    public long rejected() { return rejected.get(); }
+
+    /** Insere no modelo do snapshot; false se o rótulo não existe nesse modelo. */
+    public boolean learn(ModelSnapshot m, double[] x, String labelName) {
+        int label = m.labelIndex(labelName);
+        long t = System.nanoTime();
+        if (label < 0 || !((FlatKnn) m.classifier).insert(x, label, keepBase)) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        insertNanos += System.nanoTime() - t;
+        inserted.incrementAndGet();
+        recentX[recentNext] = x;
+        recentLabels[recentNext] = labelName;
+        recentNext = (recentNext + 1) % capacity;
+        recentSize = Math.min(recentSize + 1, capacity);
+        return true;
+    }
+
+    /** Reaplica o feedback guardado (mais antigo primeiro) num modelo recém-treinado. */
+    public int replayInto(ModelSnapshot m) {
+        if (!(m.classifier instanceof FlatKnn)) return 0;
+        FlatKnn knn = (FlatKnn) m.classifier;
+        int replayed = 0;
+        for (int j = 0; j < recentSize; j++) {
+            int i = (recentNext - recentSize + j + capacity) % capacity;
+            int label = m.labelIndex(recentLabels[i]);
+            if (label >= 0 && knn.insert(recentX[i], label, keepBase)) replayed++;
+        }
+        return replayed;
+    }
+
+    public double avgInsertMicros() {
+        long n = inserted.get();
+        return n == 0 ? 0.0 : insertNanos / 1e3 / n;
+    }
+}
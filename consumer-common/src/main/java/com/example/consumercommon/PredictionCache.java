@@ -0,0 +1,111 @@
+package com.example.consumercommon;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache LRU limitado de predições, indexado por um hash de 64 bits dos bytes crus da imagem
+ * (consultado antes do decode). O cache pertence a uma geração de modelo; invalidate() limpa
+ * o cache e avança a geração, e get/put com a geração de outro modelo são ignorados, descartando
+ * resultados calculados com o modelo antigo.
+ *
+ * Feedback do aprendizado online só marca o cache como desatualizado (markStale); a invalidação
+ * acontece em lote, no máximo uma por período (flushStaleCache de cada consumer), e não uma por amostra.
+ */
+public final class PredictionCache {
+
+    public static final class Entry {
+        public final int prediction;
+        public final double[] features;
+        public Entry(int prediction, double[] features) { this.prediction = prediction; this.features = features; }
+    }
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long P1 = 0x9E3779B185EBCA87L, P2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final int capacity;
+    private final LinkedHashMap<Long, Entry> map;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private final AtomicBoolean stale = new AtomicBoolean();
+    private volatile long generation;
+
+    public PredictionCache(int capacity) {
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<Long, Entry>(Math.max(16, capacity * 4 / 3 + 1), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PredictionCache.Entry> eldest) {
+                return size() > PredictionCache.this.capacity;
+            }
+        };
+    }
+
+    public boolean enabled() { return capacity > 0; }
+
+    public long generation() { return generation; }
+
+    // gen = geração do modelo que vai classificar (ModelSnapshot.cacheGeneration)
+    public Entry get(long key, long gen) {
+        if (capacity <= 0) return null;
+        Entry e;
+        synchronized (map) { e = gen == generation ? map.get(key) : null; }
+        (e != null ? hits : misses).incrementAndGet();
+        return e;
+    }
+
+    // se o modelo foi trocado enquanto a mensagem era classificada o valor é descartado
+    public void put(long key, long gen, Entry value) {
+        if (capacity <= 0) return;
+        synchronized (map) {
+            if (gen == generation) map.put(key, value);
+        }
+    }
+
+    public void invalidate() {
+        synchronized (map) {
+            generation++;
+            map.clear();
+        }
+        stale.set(false);
+    }
+
+    // o modelo mudou (amostra nova), mas a invalidação fica para o próximo flush
+    public void markStale() {
+        if (capacity > 0) stale.set(true);
+    }
+
+    public boolean takeStale() {
+        return stale.getAndSet(false);
+    }
+
+    public long hits() { return hits.get(); }
+    public long misses() { return misses.get(); }
+
+    public String stats() {
+        long h = hits.get(), m = misses.get();
+        int size;
+        synchronized (map) { size = map.size(); }
+        return String.format("cache size=%d/%d hits=%d misses=%d hitRate=%.3f", size, capacity, h, m,
+                (h + m) == 0 ? 0.0 : h / (double) (h + m));
+    }
+
+    // hash de 64 bits lendo 8 bytes por vez (multiplica/rotaciona + mistura final estilo xxHash)
+    public static long hash(byte[] data) {
+        long h = P2 ^ data.length;
+        int i = 0;
+        for (int end = data.length - 7; i < end; i += 8) {
+            long k = (long) LONGS.get(data, i) * P1;
+            h = Long.rotateLeft(h ^ Long.rotateLeft(k, 31) * P2, 27) * P1 + 0x85EBCA77C2B2AE63L;
+        }
+        for (; i < data.length; i++) {
+            h = Long.rotateLeft(h ^ (data[i] & 0xffL) * P1, 11) * P2;
+        }
+        h ^= h >>> 33; h *= P2;
+        h ^= h >>> 29; h *= P1;
+        return h ^ (h >>> 32);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.consumercommon;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log das predições fora do hot path. O worker só copia referências e primitivos (modelo, id, rótulo,
+ * latência, features) para um slot de um ring buffer pré-alocado — sem montar String e sem o lock do
+ * System.out. Uma thread daemon drena o ring, formata as linhas num StringBuilder reaproveitado e
+ * faz um único print por rodada.
+ *
+ * Ring: fila limitada MPSC sem lock (sequência por slot; produtor reserva com CAS no tail, publica
+ * gravando a sequência). Cheio = o evento é descartado, o worker nunca espera pelo log.
+ * Antes do ring: amostragem 1 em sampleEvery mensagens e limite de maxPerSecond linhas por segundo,
+ * independente da vazão processada. O que ficou de fora é contado e resumido numa linha por segundo.
+ */
+public final class PredictionLog {
+    private final String prefix;
+    private final int mask, sampleEvery, maxPerSecond;
+    private final AtomicLongArray sequence;
+    private final String[] models, ids, labels;
+    private final long[] latencies;
+    private final double[][] features;
+
+    private final AtomicLong tail = new AtomicLong();
+    private long head;   // só a thread de escrita
+    private final AtomicLong seen = new AtomicLong();
+    private final AtomicLong window = new AtomicLong(), windowCount = new AtomicLong();
+    private final AtomicLong written = new AtomicLong(), dropped = new AtomicLong(), suppressed = new AtomicLong();
+
+    private PredictionLog(String prefix, int capacity, int sampleEvery, int maxPerSecond) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.prefix = prefix;
+        this.mask = size - 1;
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.maxPerSecond = maxPerSecond;
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequence.set(i, i);
+        this.models = new String[size];
+        this.ids = new String[size];
+        this.labels = new String[size];
+        this.latencies = new long[size];
+        this.features = new double[size][];
+    }
+
+    /** maxPerSecond <= 0 = sem limite. */
+    public static PredictionLog start(String prefix, int capacity, int sampleEvery, int maxPerSecond) {
+        PredictionLog log = new PredictionLog(prefix, capacity, sampleEvery, maxPerSecond);
+        Thread t = new Thread(log::drainLoop, prefix.toLowerCase() + "-log");
+        t.setDaemon(true);
+        t.start();
+        return log;
+    }
+
+    public long written() { return written.get(); }
+    public long dropped() { return dropped.get(); }
+    public long suppressed() { return suppressed.get(); }
+
+    /** features != null só no modo verbose (o array não é alterado depois da predição). */
+    public void prediction(String model, String id, String label, long latencyNanos, double[] features) {
+        if (!admit()) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        long pos;
+        int slot;
+        while (true) {
+            pos = tail.get();
+            slot = (int) pos & mask;
+            long diff = sequence.get(slot) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (diff < 0) {
+                dropped.incrementAndGet();   // cheio: a escrita não está acompanhando
+                return;
+            }
+        }
+        models[slot] = model;
+        ids[slot] = id;
+        labels[slot] = label;
+        latencies[slot] = latencyNanos;
+        this.features[slot] = features;
+        sequence.set(slot, pos + 1);   // publica o slot para a thread de escrita
+    }
+
+    // amostragem e limite por segundo, ambos sem lock
+    private boolean admit() {
+        if (sampleEvery > 1 && seen.getAndIncrement() % sampleEvery != 0) return false;
+        if (maxPerSecond <= 0) return true;
+        long second = System.nanoTime() / 1_000_000_000L;
+        long current = window.get();
+        if (second != current && window.compareAndSet(current, second)) windowCount.set(0);
+        return windowCount.incrementAndGet() <= maxPerSecond;
+    }
+
+    private void drainLoop() {
+        StringBuilder sb = new StringBuilder(8192);
+        long lastSummary = System.nanoTime(), reportedSuppressed = 0, reportedDropped = 0;
+        while (true) {
+            int n = 0;
+            while (n < 1024) {
+                int slot = (int) head & mask;
+                if (sequence.get(slot) != head + 1) break;
+                format(sb, slot);
+                // solta as referências e devolve o slot aos produtores
+                ids[slot] = null;
+                this.features[slot] = null;
+                sequence.set(slot, head + mask + 1);
+                head++;
+                n++;
+            }
+            long now = System.nanoTime();
+            if (now - lastSummary >= 1_000_000_000L) {
+                long s = suppressed.get() - reportedSuppressed, d = dropped.get() - reportedDropped;
+                if (s > 0 || d > 0) {
+                    sb.append('[').append(prefix).append("] log: ").append(s).append(" predições fora da amostragem/limite, ")
+                            .append(d).append(" descartadas (buffer cheio)\n");
+                    reportedSuppressed += s;
+                    reportedDropped += d;
+                }
+                lastSummary = now;
+            }
+            if (sb.length() > 0) {
+                System.out.print(sb);
+                sb.setLength(0);
+                written.addAndGet(n);
+            }
+            if (n == 0) LockSupport.parkNanos(1_000_000L);
+        }
+    }
+
+    // [Face][DATASET] id=... predicted=HAPPY latency_ms=1000.3 features=[...]
+    private void format(StringBuilder sb, int slot) {
+        sb.append('[').append(prefix).append("][").append(models[slot]).append("] id=").append(ids[slot])
+                .append(" predicted=").append(labels[slot])
+                .append(" latency_ms=").append(latencies[slot] / 1_000_000).append('.')
+                .append(latencies[slot] / 100_000 % 10);
+        double[] f = this.features[slot];
+        if (f != null) {
+            sb.append(" features=[");
+            for (int i = 0; i < f.length; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(f[i]);
+            }
+            sb.append(']');
+        }
+        sb.append('\n');
+    }
+}
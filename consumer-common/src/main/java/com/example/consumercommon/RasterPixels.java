@@ -0,0 +1,119 @@
+package com.example.consumercommon;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Leitura direta do DataBuffer (sem getRGB por pixel) para os layouts mais comuns:
+ * TYPE_INT_RGB/TYPE_INT_ARGB, TYPE_3BYTE_BGR/TYPE_4BYTE_ABGR e TYPE_BYTE_GRAY.
+ * Produz somas de R,G,B por linha num buffer reutilizado por thread; retorna null
+ * para layouts não suportados (o chamador usa o caminho genérico com getRGB).
+ */
+public final class RasterPixels {
+    private RasterPixels() {}
+
+    // buffer por thread: [3*y]=R, [3*y+1]=G, [3*y+2]=B da linha y
+    private static final ThreadLocal<long[]> ROW_SUMS = ThreadLocal.withInitial(() -> new long[3 * 256]);
+
+    // getRGB em TYPE_BYTE_GRAY passa pela conversão gray linear -> sRGB; a LUT reproduz o mesmo resultado
+    private static final ColorModel GRAY_MODEL = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY).getColorModel();
+    private static final int[] GRAY_LUT = new int[256];
+    static {
+        for (int v = 0; v < 256; v++) {
+            GRAY_LUT[v] = GRAY_MODEL.getRGB(new byte[] { (byte) v }) & 0xff;
+        }
+    }
+
+    /**
+     * Somas de canal por linha (3 valores por linha, h linhas). O array retornado pertence à
+     * thread atual e é reaproveitado na próxima chamada; pode ser maior que 3*h.
+     */
+    public static long[] rowChannelSums(BufferedImage img) {
+        WritableRaster raster = img.getRaster();
+        if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) return null;
+        int w = img.getWidth(), h = img.getHeight();
+        DataBuffer db = raster.getDataBuffer();
+        SampleModel sm = raster.getSampleModel();
+        long[] sums = scratch(h);
+        switch (img.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                if (!(db instanceof DataBufferInt) || !(sm instanceof SinglePixelPackedSampleModel)) return null;
+                sumPackedInt(((DataBufferInt) db).getData(), db.getOffset(),
+                        ((SinglePixelPackedSampleModel) sm).getScanlineStride(), w, h, sums);
+                return sums;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                if (!(db instanceof DataBufferByte) || !(sm instanceof ComponentSampleModel)) return null;
+                sumInterleavedBytes(((DataBufferByte) db).getData(), db.getOffset(), (ComponentSampleModel) sm, w, h, sums);
+                return sums;
+            case BufferedImage.TYPE_BYTE_GRAY:
+                if (!(db instanceof DataBufferByte) || !(sm instanceof ComponentSampleModel)
+                        || !GRAY_MODEL.equals(img.getColorModel())) return null;
+                sumGray(((DataBufferByte) db).getData(), db.getOffset(), (ComponentSampleModel) sm, w, h, sums);
+                return sums;
+            default:
+                return null;
+        }
+    }
+
+    private static long[] scratch(int h) {
+        long[] sums = ROW_SUMS.get();
+        if (sums.length < 3 * h) {
+            sums = new long[3 * h];
+            ROW_SUMS.set(sums);
+        }
+        return sums;
+    }
+
+    private static void sumPackedInt(int[] data, int offset, int scan, int w, int h, long[] sums) {
+        for (int y = 0; y < h; y++) {
+            int base = offset + y * scan;
+            long r = 0, g = 0, b = 0;
+            for (int x = 0; x < w; x++) {
+                int rgb = data[base + x];
+                r += (rgb >> 16) & 0xff;
+                g += (rgb >> 8) & 0xff;
+                b += rgb & 0xff;
+            }
+            sums[3 * y] = r; sums[3 * y + 1] = g; sums[3 * y + 2] = b;
+        }
+    }
+
+    private static void sumInterleavedBytes(byte[] data, int offset, ComponentSampleModel sm, int w, int h, long[] sums) {
+        int scan = sm.getScanlineStride(), stride = sm.getPixelStride();
+        int[] bands = sm.getBandOffsets();
+        // bandas na ordem do ColorModel: (R,G,B[,A])
+        int offR = bands[0], offG = bands[1], offB = bands[2];
+        for (int y = 0; y < h; y++) {
+            int p = offset + y * scan;
+            long r = 0, g = 0, b = 0;
+            for (int x = 0; x < w; x++, p += stride) {
+                r += data[p + offR] & 0xff;
+                g += data[p + offG] & 0xff;
+                b += data[p + offB] & 0xff;
+            }
+            sums[3 * y] = r; sums[3 * y + 1] = g; sums[3 * y + 2] = b;
+        }
+    }
+
+    private static void sumGray(byte[] data, int offset, ComponentSampleModel sm, int w, int h, long[] sums) {
+        int scan = sm.getScanlineStride(), stride = sm.getPixelStride();
+        int off = offset + sm.getBandOffsets()[0];
+        for (int y = 0; y < h; y++) {
+            int p = off + y * scan;
+            long v = 0;
+            for (int x = 0; x < w; x++, p += stride) {
+                v += GRAY_LUT[data[p] & 0xff];
+            }
+            sums[3 * y] = v; sums[3 * y + 1] = v; sums[3 * y + 2] = v;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.consumercommon;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publica as predições no exchange "results" (topic, routing key = tipo) em lotes compactos, para o
+ * results-sink e quem mais quiser consumir. Um lote sai quando junta batchSize resultados ou após
+ * flushMs desde o último envio — uma publicação a cada N mensagens em vez de uma por mensagem.
+ *
+ * Formato do corpo (big-endian, content-type application/x-results): magic "RES1", count(i32), depois
+ * count registros id(UTF) label(UTF) model(UTF) latencyMicros(i32) classifiedAt(epoch ms, i64).
+ * UTF = writeUTF do DataOutputStream (u16 len + UTF-8 modificado).
+ */
+public final class ResultPublisher {
+    public static final String EXCHANGE = "results";
+    public static final String CONTENT_TYPE = "application/x-results";
+    public static final int MAGIC = 0x52455331; // "RES1"
+
+    private final Channel channel;
+    private final String type;
+    private final int batchSize;
+    private final AMQP.BasicProperties props;
+    private final AtomicLong published = new AtomicLong(), batches = new AtomicLong(), dropped = new AtomicLong();
+
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+    private DataOutputStream out = new DataOutputStream(bytes);
+    private int count;
+
+    private ResultPublisher(Channel channel, String type, int batchSize) {
+        this.channel = channel;
+        this.type = type;
+        this.batchSize = batchSize;
+        this.props = new AMQP.BasicProperties.Builder().contentType(CONTENT_TYPE).deliveryMode(2).type(type).build();
+    }
+
+    /** null com batchSize <= 0 (desligado). Channel próprio: não disputa o lock dos acks. */
+    public static ResultPublisher start(Connection conn, String type, int batchSize, long flushMs) throws IOException {
+        if (batchSize <= 0) return null;
+        Channel channel = conn.createChannel();
+        channel.exchangeDeclare(EXCHANGE, "topic", true);
+        ResultPublisher publisher = new ResultPublisher(channel, type, batchSize);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                WorkerExecutors.namedDaemon(type + "-results"));
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                publisher.flush();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        System.out.println("[" + type + "] resultados -> exchange " + EXCHANGE + " (lote " + batchSize + "/" + flushMs + "ms)");
+        return publisher;
+    }
+
+    public long published() { return published.get(); }
+    public long batches() { return batches.get(); }
+    public long dropped() { return dropped.get(); }
+
+    // chamado depois do ack: falha ao publicar resultado não pode reprocessar a mensagem
+    public void add(String id, String label, String model, long latencyNanos) {
+        byte[] full = null;
+        try {
+            synchronized (this) {
+                out.writeUTF(id != null ? id : "");
+                out.writeUTF(label);
+                out.writeUTF(model);
+                out.writeInt((int) Math.min(Integer.MAX_VALUE, latencyNanos / 1000));
+                out.writeLong(System.currentTimeMillis());
+                if (++count >= batchSize) full = take();
+            }
+            if (full != null) send(full);
+        } catch (IOException | RuntimeException e) {
+            // inclui AlreadyClosedException (channel de resultados fechado): nunca sobe para o handler da entrega
+            System.out.println("[" + type + "] lote de resultados descartado: " + e);
+        }
+    }
+
+    public void flush() throws IOException {
+        byte[] pending;
+        synchronized (this) {
+            pending = count > 0 ? take() : null;
+        }
+        if (pending != null) send(pending);
+    }
+
+    // monta o corpo (cabeçalho + registros) e começa um buffer novo; chamado com o lock
+    private byte[] take() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(bytes.size() + 8);
+        DataOutputStream header = new DataOutputStream(body);
+        header.writeInt(MAGIC);
+        header.writeInt(count);
+        bytes.writeTo(body);
+        bytes = new ByteArrayOutputStream(Math.max(4096, bytes.size()));
+        out = new DataOutputStream(bytes);
+        count = 0;
+        return body.toByteArray();
+    }
+
+    private void send(byte[] body) throws IOException {
+        int n = ByteBuffer.wrap(body).getInt(4);
+        try {
+            synchronized (channel) {
+                channel.basicPublish(EXCHANGE, type, props, body);
+            }
+        } catch (IOException | RuntimeException e) {
+            dropped.addAndGet(n);
+            throw e;
+        }
+        published.addAndGet(n);
+        batches.incrementAndGet();
+    }
+}
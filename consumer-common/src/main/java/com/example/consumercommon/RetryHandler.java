@@ -0,0 +1,122 @@
+package com.example.consumercommon;
+
+import com.google.gson.JsonParseException;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Delivery;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tratamento de falhas no lugar do nack com requeue imediato (que fazia uma mensagem envenenada
+ * voltar para a cabeça da fila em loop).
+ *
+ * A mensagem que falhou é republicada com o header "attempt" incrementado e confirmada (ack):
+ *  - tentativa <= maxRetries: vai para queue_<tipo>.retry.<atraso ms> (atraso = base * 2^(tentativa-1)).
+ *    A fila tem x-message-ttl = atraso e x-dead-letter-exchange = images; ao expirar a mensagem volta
+ *    para o exchange original com a routing key original (inclusive o shard). O exchange images.retry
+ *    é do tipo headers (header "retry-queue") justamente para não trocar a routing key.
+ *  - esgotou as tentativas, ou erro determinístico (JSON/Base64 inválido, imagem ilegível): vai para
+ *    queue_<tipo>.dead (exchange images.dead) com failure-reason, original-routing-key e failed-at.
+ * Custo de uma falha = no máximo maxRetries + 1 processamentos, espaçados pelo backoff.
+ */
+public final class RetryHandler {
+    public static final String RETRY_EXCHANGE = "images.retry";
+    public static final String DEAD_EXCHANGE = "images.dead";
+
+    private final String exchange, queueBase, type;
+    private final int maxRetries;
+    private final String[] retryQueues;
+    private final long[] delays;
+    private final AtomicLong retried = new AtomicLong(), deadLettered = new AtomicLong();
+
+    public RetryHandler(String exchange, String queueBase, String type, int maxRetries, long baseDelayMs) {
+        this.exchange = exchange;
+        this.queueBase = queueBase;
+        this.type = type;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryQueues = new String[this.maxRetries];
+        this.delays = new long[this.maxRetries];
+        for (int i = 0; i < this.maxRetries; i++) {
+            delays[i] = baseDelayMs << i;
+            // atraso no nome: mudar a config cria filas novas em vez de conflitar com os argumentos antigos
+            retryQueues[i] = queueBase + ".retry." + delays[i];
+        }
+    }
+
+    public long retried() { return retried.get(); }
+    public long deadLettered() { return deadLettered.get(); }
+    public String deadQueue() { return queueBase + ".dead"; }
+
+    public void declare(Channel channel) throws IOException {
+        channel.exchangeDeclare(RETRY_EXCHANGE, "headers", true);
+        channel.exchangeDeclare(DEAD_EXCHANGE, "direct", true);
+        for (int i = 0; i < maxRetries; i++) {
+            Map<String, Object> args = new HashMap<>();
+            args.put("x-message-ttl", delays[i]);
+            args.put("x-dead-letter-exchange", exchange);
+            channel.queueDeclare(retryQueues[i], true, false, false, args);
+            Map<String, Object> match = new HashMap<>();
+            match.put("x-match", "all");
+            match.put("retry-queue", retryQueues[i]);
+            channel.queueBind(retryQueues[i], RETRY_EXCHANGE, "", match);
+        }
+        channel.queueDeclare(deadQueue(), true, false, false, null);
+        channel.queueBind(deadQueue(), DEAD_EXCHANGE, type);
+    }
+
+    /** Republica para retry (com atraso) ou para a DLQ e confirma a entrega original. */
+    public void fail(Channel channel, Delivery delivery, Throwable error) throws IOException {
+        AMQP.BasicProperties props = delivery.getProperties();
+        Map<String, Object> headers = new HashMap<>();
+        if (props != null && props.getHeaders() != null) headers.putAll(props.getHeaders());
+        int attempt = attempt(headers) + 1;
+        String reason = error.getClass().getSimpleName() + ": " + error.getMessage();
+        headers.put("attempt", attempt);
+        headers.put("failure-reason", reason);
+
+        boolean retry = attempt <= maxRetries && !isPoison(error);
+        String routingKey = delivery.getEnvelope().getRoutingKey();
+        String target;
+        if (retry) {
+            target = retryQueues[attempt - 1];
+            headers.put("retry-queue", target);
+        } else {
+            target = deadQueue();
+            headers.remove("retry-queue");
+            headers.put("original-routing-key", routingKey);
+            headers.put("failed-at", Instant.now().toString());
+        }
+        AMQP.BasicProperties out = (props != null ? props.builder() : new AMQP.BasicProperties.Builder())
+                .headers(headers).build();
+
+        // publish + ack no mesmo lock dos acks: se cair entre os dois a mensagem é duplicada, nunca perdida
+        synchronized (channel) {
+            if (retry) channel.basicPublish(RETRY_EXCHANGE, routingKey, out, delivery.getBody());
+            else channel.basicPublish(DEAD_EXCHANGE, type, out, delivery.getBody());
+            channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+        }
+        (retry ? retried : deadLettered).incrementAndGet();
+        System.out.println("[" + type + "] falha (tentativa " + attempt + ") -> " + target +
+                (retry ? " em " + delays[attempt - 1] + "ms" : "") + ": " + reason);
+    }
+
+    private static int attempt(Map<String, Object> headers) {
+        Object v = headers.get("attempt");
+        if (v instanceof Number) return ((Number) v).intValue();
+        try {
+            return v != null ? Integer.parseInt(v.toString()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // payload que nunca vai ser processado: retry só gastaria trabalho
+    public static boolean isPoison(Throwable error) {
+        return error instanceof JsonParseException || error instanceof IllegalArgumentException;
+    }
+}
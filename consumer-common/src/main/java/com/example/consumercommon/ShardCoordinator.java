@@ -0,0 +1,167 @@
+package com.example.consumercommon;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DeliverCallback;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo sharded: o gerador espalha cada tipo em N filas (queue_<tipo>.0..N-1, routing key <tipo>.shard.i,
+ * partição = hash do id) e cada instância do consumer assume uma parte delas.
+ *
+ * As instâncias se enxergam por heartbeats num fanout ("shards.<tipo>"): cada uma publica seu id a cada
+ * heartbeatMs e considera viva quem apareceu nos últimos 3 intervalos. O dono de cada shard é escolhido
+ * por rendezvous hashing com carga limitada (maior hash(instância, shard) entre as instâncias com menos
+ * de ceil(N/instâncias) shards): todas calculam a mesma divisão, equilibrada, e entrar/sair uma
+ * instância move poucos shards. A cada heartbeat o coordinator faz basicConsume nos shards ganhos e
+ * basicCancel nos perdidos, sempre no channel principal (acks continuam valendo após o cancel). Durante
+ * a troca dois consumers podem ler o mesmo shard por um intervalo — sem perda, cada mensagem é
+ * entregue uma vez.
+ */
+public final class ShardCoordinator {
+    private final Connection conn;
+    private final Channel channel;
+    private final String exchange, queueBase, type;
+    private final int shards;
+    private final long heartbeatMs;
+    private final String instanceId;
+
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final Map<Integer, String> consumerTags = new HashMap<>();   // shard -> consumer tag
+    private DeliverCallback callback;
+    private Channel membership;
+
+    public ShardCoordinator(Connection conn, Channel channel, String exchange, String queueBase, String type,
+                     int shards, long heartbeatMs) {
+        this.conn = conn;
+        this.channel = channel;
+        this.exchange = exchange;
+        this.queueBase = queueBase;
+        this.type = type;
+        this.shards = shards;
+        this.heartbeatMs = heartbeatMs;
+        this.instanceId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public static String queueName(String queueBase, int shard) { return queueBase + "." + shard; }
+    public static String routingKey(String type, int shard) { return type + ".shard." + shard; }
+
+    // filas duráveis idempotentes: gerador e consumers podem declarar em qualquer ordem
+    public void declareQueues() throws IOException {
+        for (int s = 0; s < shards; s++) {
+            channel.queueDeclare(queueName(queueBase, s), true, false, false, null);
+            channel.queueBind(queueName(queueBase, s), exchange, routingKey(type, s));
+        }
+    }
+
+    public synchronized int owned() { return consumerTags.size(); }
+
+    public void start(DeliverCallback callback) throws IOException {
+        this.callback = callback;
+        String membersExchange = "shards." + type;
+        membership = conn.createChannel();
+        membership.exchangeDeclare(membersExchange, "fanout", false, true, null);
+        String q = membership.queueDeclare().getQueue();   // exclusiva, some junto com a conexão
+        membership.queueBind(q, membersExchange, "");
+        membership.basicConsume(q, true, (tag, d) ->
+                lastSeen.put(new String(d.getBody(), StandardCharsets.UTF_8), System.currentTimeMillis()), tag -> {});
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                WorkerExecutors.namedDaemon(type + "-shards"));
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                synchronized (membership) {
+                    membership.basicPublish(membersExchange, "", null, instanceId.getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, 0, heartbeatMs, TimeUnit.MILLISECONDS);
+        // primeira divisão só depois de um heartbeat: evita pegar tudo e soltar logo em seguida
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                rebalance();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        System.out.println("[" + type + "] sharded: " + shards + " filas " + queueName(queueBase, 0) + ".." +
+                (shards - 1) + ", instância " + instanceId);
+    }
+
+    private synchronized void rebalance() throws IOException {
+        long now = System.currentTimeMillis();
+        lastSeen.put(instanceId, now);
+        lastSeen.values().removeIf(t -> now - t > 3 * heartbeatMs);
+        List<String> members = new ArrayList<>(new TreeSet<>(lastSeen.keySet()));
+
+        String[] owners = assign(members, shards);
+        Set<Integer> mine = new TreeSet<>();
+        for (int s = 0; s < shards; s++) {
+            if (owners[s].equals(instanceId)) mine.add(s);
+        }
+        if (mine.equals(consumerTags.keySet())) return;
+
+        for (Integer s : new ArrayList<>(consumerTags.keySet())) {
+            if (mine.contains(s)) continue;
+            synchronized (channel) {
+                channel.basicCancel(consumerTags.remove(s));
+            }
+        }
+        for (Integer s : mine) {
+            if (consumerTags.containsKey(s)) continue;
+            synchronized (channel) {
+                consumerTags.put(s, channel.basicConsume(queueName(queueBase, s), false, callback, tag -> {}));
+            }
+        }
+        System.out.println("[" + type + "] shards " + mine + " (" + members.size() + " instâncias)");
+    }
+
+    // rendezvous hashing com limite de carga: cada shard vai para a instância de maior peso que ainda tem vaga
+    public static String[] assign(List<String> members, int shards) {
+        int cap = (shards + members.size() - 1) / members.size();
+        Map<String, Integer> load = new HashMap<>();
+        String[] owners = new String[shards];
+        for (int s = 0; s < shards; s++) {
+            long bestWeight = Long.MIN_VALUE;
+            for (String m : members) {
+                long w = weight(m, s);
+                if (load.getOrDefault(m, 0) < cap && (owners[s] == null || w > bestWeight)) {
+                    owners[s] = m;
+                    bestWeight = w;
+                }
+            }
+            load.merge(owners[s], 1, Integer::sum);
+        }
+        return owners;
+    }
+
+    private static long weight(String member, int shard) {
+        long h = (member.hashCode() * 0x9E3779B97F4A7C15L) ^ ((shard + 1) * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ (h >>> 33);
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "consumer";
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.consumercommon;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor dos workers do consumer (modo concorrente).
+ * "virtual" usa virtual threads quando a JVM suporta (Java 21+, via reflexão para manter o alvo Java 11);
+ * caso contrário, ou com "platform", usa um pool fixo de threads de plataforma.
+ */
+public final class WorkerExecutors {
+    private WorkerExecutors() {}
+
+    public static ExecutorService create(String kind, int workers, String namePrefix) {
+        if ("virtual".equalsIgnoreCase(kind)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads indisponíveis nesta JVM -> pool fixo de " + workers + " threads.");
+            }
+        }
+        return Executors.newFixedThreadPool(workers, namedDaemon(namePrefix));
+    }
+
+    public static ThreadFactory namedDaemon(String namePrefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, namePrefix + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
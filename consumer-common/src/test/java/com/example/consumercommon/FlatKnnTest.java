@@ -0,0 +1,146 @@
+package com.example.consumercommon;
+
+import org.junit.Test;
+import smile.classification.KNN;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * O FlatKnn substitui o smile.classification.KNN sem mudar as predições: mesma distância,
+ * mesmo voto e mesmo desempate (menor rótulo). Compara os dois em dados aleatórios com semente fixa.
+ */
+public class FlatKnnTest {
+
+    @Test
+    public void matchesSmileOnRandomData() {
+        for (int k : new int[] {1, 3, 5}) {
+            for (int classes : new int[] {2, 3}) {
+                assertSamePredictions(seed(k, classes), 300, 3 + classes % 2, classes, k, false);
+            }
+        }
+    }
+
+    @Test
+    public void matchesSmileOnVoteTies() {
+        // k par com 2 classes e k=3 com 3 classes: empates de voto resolvidos para o menor rótulo
+        assertSamePredictions(11, 200, 3, 2, 4, false);
+        assertSamePredictions(12, 200, 4, 3, 3, false);
+        assertSamePredictions(13, 200, 4, 3, 6, false);
+    }
+
+    @Test
+    public void matchesSmileWithKAboveClassCount() {
+        assertSamePredictions(21, 250, 3, 2, 7, false);
+        assertSamePredictions(22, 250, 4, 3, 9, false);
+    }
+
+    @Test
+    public void integerGridTiesKeepLowestIndex() {
+        // coordenadas inteiras pequenas: muitas amostras repetidas e distâncias iguais
+        assertGridPredictions(31, 150, 3, 3, 3);
+        assertGridPredictions(32, 150, 4, 2, 4);
+    }
+
+    @Test
+    public void insertKeepsPredictionsConsistentWithRefit() {
+        Random rnd = new Random(41);
+        double[][] x = randomPoints(rnd, 120, 3, false);
+        int[] y = randomLabels(rnd, 120, 3);
+        FlatKnn knn = FlatKnn.fit(Arrays.copyOf(x, 100), Arrays.copyOf(y, 100), 3, 120);
+        for (int i = 100; i < 120; i++) assertTrue(knn.insert(x[i], y[i], true));
+        assertEquals(120, knn.size());
+
+        KNN<double[]> reference = KNN.fit(x, y, 3);
+        for (double[] q : randomPoints(rnd, 200, 3, false)) {
+            assertEquals(reference.predict(q), knn.predict(q));
+        }
+    }
+
+    @Test
+    public void insertRejectsUnknownLabelOrWrongDimension() {
+        Random rnd = new Random(51);
+        FlatKnn knn = FlatKnn.fit(randomPoints(rnd, 10, 3, false), randomLabels(rnd, 10, 2), 3, 20);
+        assertFalse(knn.insert(new double[] {0, 0, 0}, 5, true));
+        assertFalse(knn.insert(new double[] {0, 0}, 1, true));
+        assertEquals(10, knn.size());
+    }
+
+    private static long seed(int k, int classes) {
+        return 1000L * k + classes;
+    }
+
+    private static void assertSamePredictions(long seed, int n, int dim, int classes, int k, boolean grid) {
+        Random rnd = new Random(seed);
+        double[][] x = randomPoints(rnd, n, dim, grid);
+        int[] y = randomLabels(rnd, n, classes);
+        KNN<double[]> reference = KNN.fit(x, y, k);
+        FlatKnn flat = FlatKnn.fit(x, y, k);
+        for (double[] q : randomPoints(rnd, 300, dim, grid)) {
+            assertEquals("seed=" + seed + " k=" + k, reference.predict(q), flat.predict(q));
+        }
+    }
+
+    // com empate de distância no k-ésimo vizinho o smile escolhe pela ordem da KD-tree; o FlatKnn fica
+    // com o de menor índice. Sem empate na fronteira os dois têm de coincidir
+    private static void assertGridPredictions(long seed, int n, int dim, int classes, int k) {
+        Random rnd = new Random(seed);
+        double[][] x = randomPoints(rnd, n, dim, true);
+        int[] y = randomLabels(rnd, n, classes);
+        KNN<double[]> reference = KNN.fit(x, y, k);
+        FlatKnn flat = FlatKnn.fit(x, y, k);
+        int unambiguous = 0;
+        for (double[] q : randomPoints(rnd, 300, dim, true)) {
+            double[] dist = new double[n];
+            for (int i = 0; i < n; i++) dist[i] = squaredDistance(x[i], q);
+            double[] sorted = dist.clone();
+            Arrays.sort(sorted);
+            if (sorted[k - 1] < sorted[k]) {
+                assertEquals("seed=" + seed + " k=" + k, reference.predict(q), flat.predict(q));
+                unambiguous++;
+            }
+            assertEquals("seed=" + seed + " k=" + k, lowestIndexVote(dist, y, k, classes), flat.predict(q));
+        }
+        assertTrue("nenhuma consulta sem empate na fronteira", unambiguous > 0);
+    }
+
+    private static int lowestIndexVote(double[] dist, int[] y, int k, int classes) {
+        Integer[] order = new Integer[dist.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(dist[a], dist[b]));   // estável: menor índice primeiro
+        int[] votes = new int[classes];
+        for (int j = 0; j < k; j++) votes[y[order[j]]]++;
+        int best = 0;
+        for (int c = 1; c < classes; c++) {
+            if (votes[c] > votes[best]) best = c;
+        }
+        return best;
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        double s = 0;
+        for (int d = 0; d < a.length; d++) {
+            double t = a[d] - b[d];
+            s += t * t;
+        }
+        return s;
+    }
+
+    private static double[][] randomPoints(Random rnd, int n, int dim, boolean grid) {
+        double[][] x = new double[n][dim];
+        for (double[] row : x) {
+            for (int d = 0; d < dim; d++) row[d] = grid ? rnd.nextInt(4) : rnd.nextGaussian() * 50 + 120;
+        }
+        return x;
+    }
+
+    private static int[] randomLabels(Random rnd, int n, int classes) {
+        int[] y = new int[n];
+        for (int i = 0; i < n; i++) y[i] = i < classes ? i : rnd.nextInt(classes);
+        return y;
+    }
+}
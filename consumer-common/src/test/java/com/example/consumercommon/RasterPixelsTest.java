@@ -0,0 +1,110 @@
+package com.example.consumercommon;
+
+import org.junit.Test;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * O caminho direto do RasterPixels tem de dar exatamente as mesmas somas por linha que o getRGB
+ * (que é o que o extractFeatures usava antes) em cada layout suportado.
+ */
+public class RasterPixelsTest {
+
+    @Test
+    public void intRgbMatchesGetRgb() {
+        assertMatchesGetRgb(randomImage(BufferedImage.TYPE_INT_RGB, 37, 23, 1));
+    }
+
+    @Test
+    public void intArgbMatchesGetRgb() {
+        assertMatchesGetRgb(randomImage(BufferedImage.TYPE_INT_ARGB, 16, 41, 2));
+    }
+
+    @Test
+    public void threeByteBgrMatchesGetRgb() {
+        assertMatchesGetRgb(randomImage(BufferedImage.TYPE_3BYTE_BGR, 31, 29, 3));
+    }
+
+    @Test
+    public void fourByteAbgrMatchesGetRgb() {
+        assertMatchesGetRgb(randomImage(BufferedImage.TYPE_4BYTE_ABGR, 25, 19, 4));
+    }
+
+    @Test
+    public void byteGrayMatchesGetRgb() {
+        // grava os bytes direto no raster: cobre todos os 256 níveis da LUT gray -> sRGB
+        BufferedImage img = new BufferedImage(64, 12, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = img.getRaster();
+        Random rnd = new Random(5);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                raster.setSample(x, y, 0, y == 0 ? x * 4 + 3 : rnd.nextInt(256));
+            }
+        }
+        assertMatchesGetRgb(img);
+    }
+
+    @Test
+    public void byteIndexedFallsBack() {
+        assertNull(RasterPixels.rowChannelSums(randomImage(BufferedImage.TYPE_BYTE_INDEXED, 8, 8, 6)));
+    }
+
+    @Test
+    public void customTypeFallsBack() {
+        ComponentColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                false, false, ComponentColorModel.OPAQUE, DataBuffer.TYPE_USHORT);
+        BufferedImage img = new BufferedImage(cm, cm.createCompatibleWritableRaster(8, 8), false, null);
+        assertEquals(BufferedImage.TYPE_CUSTOM, img.getType());
+        assertNull(RasterPixels.rowChannelSums(img));
+    }
+
+    @Test
+    public void translatedSubimageFallsBack() {
+        BufferedImage sub = randomImage(BufferedImage.TYPE_INT_RGB, 16, 16, 7).getSubimage(4, 4, 8, 8);
+        assertNull(RasterPixels.rowChannelSums(sub));
+    }
+
+    @Test
+    public void reusedBufferGrowsWithHeight() {
+        assertMatchesGetRgb(randomImage(BufferedImage.TYPE_INT_RGB, 4, 8, 8));
+        assertMatchesGetRgb(randomImage(BufferedImage.TYPE_INT_RGB, 4, 300, 9));
+        assertMatchesGetRgb(randomImage(BufferedImage.TYPE_INT_RGB, 4, 8, 10));
+    }
+
+    private static BufferedImage randomImage(int type, int w, int h, long seed) {
+        BufferedImage img = new BufferedImage(w, h, type);
+        Random rnd = new Random(seed);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                img.setRGB(x, y, rnd.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static void assertMatchesGetRgb(BufferedImage img) {
+        long[] sums = RasterPixels.rowChannelSums(img);
+        assertNotNull("layout deveria ser suportado: tipo " + img.getType(), sums);
+        for (int y = 0; y < img.getHeight(); y++) {
+            long r = 0, g = 0, b = 0;
+            for (int x = 0; x < img.getWidth(); x++) {
+                int rgb = img.getRGB(x, y);
+                r += (rgb >> 16) & 0xff;
+                g += (rgb >> 8) & 0xff;
+                b += rgb & 0xff;
+            }
+            assertEquals("R linha " + y, r, sums[3 * y]);
+            assertEquals("G linha " + y, g, sums[3 * y + 1]);
+            assertEquals("B linha " + y, b, sums[3 * y + 2]);
+        }
+    }
+}
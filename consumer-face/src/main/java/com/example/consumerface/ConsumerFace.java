@@ -1,5 +1,22 @@
 package com.example.consumerface;
 
+import com.example.consumercommon.AdaptiveController;
+import com.example.consumercommon.ConsumerMetrics;
+import com.example.consumercommon.DeliveryBatcher;
+import com.example.consumercommon.Evaluation;
+import com.example.consumercommon.FeatureStore;
+import com.example.consumercommon.FlatKnn;
+import com.example.consumercommon.ImageDecoder;
+import com.example.consumercommon.ModelReloader;
+import com.example.consumercommon.ModelSnapshot;
+import com.example.consumercommon.OnlineLearner;
+import com.example.consumercommon.PredictionCache;
+import com.example.consumercommon.PredictionLog;
+import com.example.consumercommon.RasterPixels;
+import com.example.consumercommon.ResultPublisher;
+import com.example.consumercommon.RetryHandler;
+import com.example.consumercommon.ShardCoordinator;
+import com.example.consumercommon.WorkerExecutors;
 import com.google.gson.Gson;
 import com.rabbitmq.client.*;
 
@@ -8,12 +25,24 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import smile.classification.Classifier;
 import smile.classification.KNN;
 
 /**
@@ -24,13 +53,40 @@ import smile.classification.KNN;
 public class ConsumerFace {
     private static final String EXCHANGE = "images";
     private static final String QUEUE = "queue_face";
+    // imagens rotuladas para aprendizado online (FACE_ONLINE=1)
+    private static final String FEEDBACK_QUEUE = "queue_face_label";
+    private static final String FEEDBACK_KEY = "face.label";
     private static final Gson gson = new Gson();
-
-    // modelo KNN
-    private static KNN<double[]> knnModel;
-    private static String modelTag = "SYN";          // DATASET ou SYN
-    private static boolean usingDataset = false;
+    static final String CONTENT_TYPE_PNG = "image/png";
+
+    static final String[] LABELS = {"SAD", "HAPPY"};
+    // modelo KNN + labels + origem (DATASET ou SYN), trocados juntos no hot reload
+    private static final AtomicReference<ModelSnapshot> model = new AtomicReference<>();
+    // implementação do k-NN: smile (padrão) ou flat (matriz plana própria)
+    private static String classifierKind = "smile";
+    // aprendizado online pela fila de feedback (null = desligado)
+    private static OnlineLearner onlineLearner;
     private static boolean verbose = false;
+    // processamento lento simulado por mensagem/lote (FACE_PROCESSING_DELAY_MS; 0 = só o custo real)
+    static long processingDelayMs = 1000;
+    // log das predições: ring buffer drenado por uma thread própria, com amostragem e limite por segundo
+    static PredictionLog predictionLog;
+    // cache de predições por hash dos bytes da imagem (tamanho 0 = desligado)
+    static PredictionCache predictionCache = new PredictionCache(0);
+    // histogramas por estágio + latência fim a fim, expostos em /metrics
+    static final ConsumerMetrics metrics = new ConsumerMetrics("face");
+    // falhas: retry com backoff (filas com TTL) e DLQ no fim, em vez de nack com requeue
+    static RetryHandler retries;
+    // predições publicadas em lote no exchange results (null = desligado)
+    private static ResultPublisher results;
+    // cache persistente de features do dataset (vazio = desligado)
+    private static String featureStorePath = "";
+    // decode do dataset com resolução limitada (FACE_DECODE_MAX_SIDE, 0 = resolução completa)
+    private static ImageDecoder datasetDecoder = new ImageDecoder(0);
+    // FACE_DECODE_COMPARE=1: relatório de acurácia/tempo/alocação do decode reduzido vs completo a cada treino
+    private static boolean decodeCompare = false;
+    // incrementar sempre que extractFeatures mudar -> invalida o feature store gravado
+    static final int FEATURE_VERSION = 1;
 
     public static void main(String[] args) throws Exception {
         // REMOVIDO: trainModel(); -> agora dependemos da variável de ambiente
@@ -38,10 +94,59 @@ public class ConsumerFace {
         String user = System.getenv().getOrDefault("RABBITMQ_USER", "guest");
         String pass = System.getenv().getOrDefault("RABBITMQ_PASS", "guest");
         String datasetDir = System.getenv().getOrDefault("DATASET_DIR", "./archive");
-        verbose = "1".equals(System.getenv().getOrDefault("FACE_VERBOSE","0"));
         boolean forceSynthetic = "1".equals(System.getenv().getOrDefault("FACE_FORCE_SYNTHETIC","0"));
-        // treina modelo (dataset real ou fallback)
-        trainModel(datasetDir, forceSynthetic);
+        configureModel();
+        // modo offline, sem broker: FACE_MODE=evaluate ou "java -jar ... evaluate [diretório do dataset]"
+        if ("evaluate".equalsIgnoreCase(args.length > 0 ? args[0] : System.getenv().getOrDefault("FACE_MODE", "consume"))) {
+            evaluateOffline(args.length > 1 ? args[1] : datasetDir);
+            return;
+        }
+        predictionLog = PredictionLog.start("Face",
+                Integer.parseInt(System.getenv().getOrDefault("FACE_LOG_BUFFER", "4096")),
+                Integer.parseInt(System.getenv().getOrDefault("FACE_LOG_SAMPLE", "1")),
+                Integer.parseInt(System.getenv().getOrDefault("FACE_LOG_RATE", "100")));
+        predictionCache = new PredictionCache(Integer.parseInt(System.getenv().getOrDefault("FACE_CACHE_SIZE", "0")));
+        metrics.cacheCounters(() -> predictionCache.hits(), () -> predictionCache.misses());
+        metrics.gauge("log_written", "Predições escritas no log", predictionLog::written);
+        metrics.gauge("log_suppressed", "Predições fora do log por amostragem/limite por segundo", predictionLog::suppressed);
+        metrics.gauge("log_dropped", "Predições fora do log por buffer cheio", predictionLog::dropped);
+        metrics.serve(Integer.parseInt(System.getenv().getOrDefault("FACE_METRICS_PORT", "9101")));
+        // hot reload: consome já com o sintético, treina o dataset em background e observa o diretório
+        boolean reload = !forceSynthetic && "1".equals(System.getenv().getOrDefault("FACE_MODEL_RELOAD", "1"));
+        // modo concorrente: FACE_WORKERS>1 ativa o pool; FACE_EXECUTOR=virtual|platform
+        int workers = Integer.parseInt(System.getenv().getOrDefault("FACE_WORKERS", "1"));
+        String executorKind = System.getenv().getOrDefault("FACE_EXECUTOR", "platform");
+        // micro-batch: FACE_BATCH_SIZE>1 agrupa até N mensagens ou FACE_BATCH_WAIT_MS (tem precedência sobre workers)
+        int batchSize = Integer.parseInt(System.getenv().getOrDefault("FACE_BATCH_SIZE", "1"));
+        long batchWaitMs = Long.parseLong(System.getenv().getOrDefault("FACE_BATCH_WAIT_MS", "50"));
+        // prefetch 0 = sem basicQos (comportamento original); no modo concorrente o padrão é 1 msg por worker
+        // e no modo batch 2 lotes, para o próximo lote já estar chegando enquanto o atual é classificado
+        String defaultPrefetch = batchSize > 1 ? String.valueOf(batchSize * 2) : workers > 1 ? String.valueOf(workers) : "0";
+        int prefetch = Integer.parseInt(System.getenv().getOrDefault("FACE_PREFETCH", defaultPrefetch));
+        // controle adaptativo (AIMD) de prefetch + workers; implica modo concorrente
+        boolean adaptive = batchSize <= 1 && "1".equals(System.getenv().getOrDefault("FACE_ADAPTIVE", "0"));
+        // sharded: consome das filas queue_face.i (routing key face.shard.i) divididas entre as instâncias
+        int shards = Integer.parseInt(System.getenv().getOrDefault("FACE_SHARDS", "0"));
+        if (reload) {
+            swapModel(trainSynthetic());
+            ModelReloader reloader = new ModelReloader(() -> trainDataset(datasetDir), model::get, ConsumerFace::swapModel,
+                    Double.parseDouble(System.getenv().getOrDefault("FACE_RELOAD_MIN_ACCURACY", "0")),
+                    Double.parseDouble(System.getenv().getOrDefault("FACE_RELOAD_TOLERANCE", "0.02")),
+                    Long.parseLong(System.getenv().getOrDefault("FACE_RELOAD_DEBOUNCE_MS", "5000")),
+                    "Face");
+            reloader.requestReload("início");
+            reloader.watch(Paths.get(datasetDir));
+            // admin fora do servidor de métricas: só loopback por padrão (exposto de propósito com FACE_ADMIN_BIND + token)
+            reloader.serveAdmin(System.getenv().getOrDefault("FACE_ADMIN_BIND", "127.0.0.1"),
+                    Integer.parseInt(System.getenv().getOrDefault("FACE_ADMIN_PORT", "9111")),
+                    System.getenv().getOrDefault("FACE_ADMIN_TOKEN", ""),
+                    Long.parseLong(System.getenv().getOrDefault("FACE_ADMIN_MIN_INTERVAL_MS", "60000")));
+            metrics.gauge("model_reloads", "Modelos publicados por hot reload", reloader::reloads);
+            metrics.gauge("model_reloads_rejected", "Modelos rejeitados na validação", reloader::rejected);
+        } else {
+            // treina modelo (dataset real ou fallback) antes de consumir
+            trainModel(datasetDir, forceSynthetic);
+        }
 
         ConnectionFactory factory = new ConnectionFactory();
         factory.setHost(host);
@@ -51,80 +156,508 @@ public class ConsumerFace {
         Connection conn = factory.newConnection();
         Channel channel = conn.createChannel();
         channel.exchangeDeclare(EXCHANGE, "topic", true);
+        // no modo adaptativo o limite é aplicado pelo controlador (basicQos global do channel);
+        // sharded também usa o limite do channel, senão cada shard consumido teria o seu próprio prefetch
+        if (prefetch > 0 && !adaptive) channel.basicQos(prefetch, shards > 1);
+
+        // cria fila e bind (ou as filas dos shards)
+        ShardCoordinator sharding = shards > 1
+                ? new ShardCoordinator(conn, channel, EXCHANGE, QUEUE, "face", shards,
+                        Long.parseLong(System.getenv().getOrDefault("FACE_SHARD_HEARTBEAT_MS", "2000")))
+                : null;
+        if (sharding != null) {
+            sharding.declareQueues();
+        } else {
+            channel.queueDeclare(QUEUE, true, false, false, null);
+            channel.queueBind(QUEUE, EXCHANGE, "face");
+        }
+        retries = new RetryHandler(EXCHANGE, QUEUE, "face",
+                Integer.parseInt(System.getenv().getOrDefault("FACE_RETRY_MAX", "3")),
+                Long.parseLong(System.getenv().getOrDefault("FACE_RETRY_BASE_MS", "1000")));
+        retries.declare(channel);
+        metrics.gauge("retried", "Mensagens reenviadas para retry com atraso", retries::retried);
+        metrics.gauge("dead_lettered", "Mensagens enviadas para " + retries.deadQueue(), retries::deadLettered);
+        results = ResultPublisher.start(conn, "face",
+                Integer.parseInt(System.getenv().getOrDefault("FACE_RESULTS_BATCH", "100")),
+                Long.parseLong(System.getenv().getOrDefault("FACE_RESULTS_FLUSH_MS", "200")));
+        if (results != null) {
+            metrics.gauge("results_published", "Predições publicadas no exchange results", results::published);
+            metrics.gauge("results_dropped", "Predições perdidas em falhas de publicação", results::dropped);
+        }
 
-        // cria fila e bind
-        channel.queueDeclare(QUEUE, true, false, false, null);
-        channel.queueBind(QUEUE, EXCHANGE, "face");
+        System.out.println("ConsumerFace waiting for messages... (model=" + model.get().tag + "/" + classifierKind +
+                (batchSize > 1 ? ", batch=" + batchSize + "/" + batchWaitMs + "ms"
+                        : ", workers=" + workers + (workers > 1 || adaptive ? "/" + executorKind : "")) +
+                (adaptive ? ", adaptive" : ", prefetch=" + prefetch) + (sharding != null ? ", shards=" + shards : "") + ")");
 
-        System.out.println("ConsumerFace waiting for messages... (model=" + modelTag + ")");
+        if (onlineLearner != null) startFeedbackConsumer(conn);
+
+        if (batchSize > 1) {
+            DeliveryBatcher batcher = new DeliveryBatcher(batchSize, batchWaitMs, batch -> handleBatch(channel, batch));
+            batcher.start("consumer-face-batcher");
+            consume(channel, sharding, (consumerTag, delivery) -> batcher.offer(delivery));
+            return;
+        }
 
+        ExecutorService workerPool = workers > 1 || adaptive
+                ? WorkerExecutors.create(executorKind, Math.max(1, workers), "consumer-face-worker") : null;
+        AdaptiveController controller = adaptive ? startAdaptive(channel, workerPool, prefetch > 0 ? prefetch : workers) : null;
         DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            try {
-                String body = new String(delivery.getBody());
-                MessagePayload payload = gson.fromJson(body, MessagePayload.class);
-                BufferedImage img = decodeImage(payload.image);
-                double[] features = extractFeatures(img);
+            if (workerPool == null) {
+                handleDelivery(channel, delivery);
+                return;
+            }
+            // modo concorrente: a thread do client só repassa; ack/nack volta no mesmo channel
+            long arrived = System.nanoTime();
+            if (controller != null) controller.onStart();
+            workerPool.execute(() -> {
+                try {
+                    handleDelivery(channel, delivery);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    if (controller != null) controller.onComplete(System.nanoTime() - arrived);
+                }
+            });
+        };
 
-                int pred = knnModel.predict(features);
-                String label = pred == 1 ? "HAPPY" : "SAD";
+        consume(channel, sharding, deliverCallback);
+    }
 
-                // simulate slow processing (longer than generator interval)
-                Thread.sleep(1000);
+    // configuração de modelo/treino lida do ambiente (verbose, atraso simulado, classificador, online,
+    // feature store, decode); separada do main para o consumer-runtime treinar com as mesmas variáveis
+    static void configureModel() {
+        verbose = "1".equals(System.getenv().getOrDefault("FACE_VERBOSE","0"));
+        processingDelayMs = Long.parseLong(System.getenv().getOrDefault("FACE_PROCESSING_DELAY_MS", "1000"));
+        classifierKind = System.getenv().getOrDefault("FACE_CLASSIFIER", "smile");
+        if ("1".equals(System.getenv().getOrDefault("FACE_ONLINE", "0"))) {
+            // o KNN do smile não aceita inserções -> online learning usa o FlatKnn com vagas reservadas
+            if (!"flat".equalsIgnoreCase(classifierKind)) {
+                System.out.println("FACE_ONLINE=1 requer o k-NN plano -> FACE_CLASSIFIER=flat");
+                classifierKind = "flat";
+            }
+            onlineLearner = new OnlineLearner(
+                    Integer.parseInt(System.getenv().getOrDefault("FACE_ONLINE_CAPACITY", "10000")),
+                    !"oldest".equalsIgnoreCase(System.getenv().getOrDefault("FACE_ONLINE_EVICTION", "feedback")));
+        }
+        featureStorePath = System.getenv().getOrDefault("FACE_FEATURE_STORE", "");
+        datasetDecoder = new ImageDecoder(Integer.parseInt(System.getenv().getOrDefault("FACE_DECODE_MAX_SIDE", "0")));
+        decodeCompare = "1".equals(System.getenv().getOrDefault("FACE_DECODE_COMPARE", "0"));
+    }
 
-                System.out.println("[Face][" + modelTag + "] id=" + payload.id + " -> predicted: " + label +
-                        (verbose ? (" features=" + Arrays.toString(features)) : ""));
-                // ack
-                channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
-            } catch (Exception e) {
-                e.printStackTrace();
-                channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
+    // modelo ativo (o swap é atômico: quem lê uma vez usa o mesmo classificador e rótulos até o fim)
+    static ModelSnapshot activeModel() {
+        return model.get();
+    }
+
+    static void consume(Channel channel, ShardCoordinator sharding, DeliverCallback callback) throws IOException {
+        if (sharding == null) {
+            channel.basicConsume(QUEUE, false, callback, consumerTag -> {});
+            return;
+        }
+        sharding.start(callback);
+        metrics.gauge("shards_owned", "Shards consumidos por esta instância", sharding::owned);
+    }
+
+    static AdaptiveController startAdaptive(Channel channel, ExecutorService workerPool, int initial) throws Exception {
+        Map<String, String> env = System.getenv();
+        AdaptiveController controller = new AdaptiveController(channel,
+                workerPool instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) workerPool : null,
+                initial,
+                Integer.parseInt(env.getOrDefault("FACE_ADAPTIVE_MIN", "1")),
+                Integer.parseInt(env.getOrDefault("FACE_ADAPTIVE_MAX", "64")),
+                Long.parseLong(env.getOrDefault("FACE_ADAPTIVE_TARGET_MS", "0")),
+                Double.parseDouble(env.getOrDefault("FACE_ADAPTIVE_TOLERANCE", "2.0")),
+                Long.parseLong(env.getOrDefault("FACE_ADAPTIVE_INTERVAL_MS", "2000")),
+                processingDelayMs,
+                "Face");
+        controller.start();
+        metrics.gauge("concurrency_limit", "Limite atual de prefetch/concorrência (controle adaptativo)", controller::limit);
+        metrics.gauge("in_flight", "Mensagens recebidas ainda não confirmadas", controller::inFlight);
+        return controller;
+    }
+
+    // fila de feedback em channel próprio: não disputa o prefetch nem os acks do channel principal
+    static void startFeedbackConsumer(Connection conn) throws IOException {
+        Channel feedback = conn.createChannel();
+        feedback.basicQos(64);
+        feedback.queueDeclare(FEEDBACK_QUEUE, true, false, false, null);
+        feedback.queueBind(FEEDBACK_QUEUE, EXCHANGE, FEEDBACK_KEY);
+        metrics.gauge("online_inserts", "Amostras de feedback inseridas no k-NN", onlineLearner::inserted);
+        metrics.gauge("online_rejected", "Feedback descartado (rótulo desconhecido)", onlineLearner::rejected);
+        metrics.gauge("model_samples", "Amostras no k-NN ativo", () -> ((FlatKnn) model.get().classifier).size());
+        feedback.basicConsume(FEEDBACK_QUEUE, false, (consumerTag, delivery) -> handleFeedback(feedback, delivery), consumerTag -> {});
+        long invalidateMs = Long.parseLong(System.getenv().getOrDefault("FACE_CACHE_INVALIDATE_MS", "1000"));
+        if (predictionCache.enabled() && invalidateMs > 0) {
+            Executors.newSingleThreadScheduledExecutor(WorkerExecutors.namedDaemon("face-cache-invalidate"))
+                    .scheduleWithFixedDelay(ConsumerFace::flushStaleCache, invalidateMs, invalidateMs, TimeUnit.MILLISECONDS);
+        }
+        System.out.println("Face online learning: fila " + FEEDBACK_QUEUE + " (" + FEEDBACK_KEY + "), capacidade=" +
+                onlineLearner.capacity + ", eviction=" + (onlineLearner.keepBase ? "feedback" : "oldest"));
+    }
+
+    // imagem rotulada -> features -> insert no k-NN ativo (sem re-treino)
+    static void handleFeedback(Channel channel, Delivery delivery) throws IOException {
+        long tag = delivery.getEnvelope().getDeliveryTag();
+        try {
+            MessagePayload payload = readPayload(delivery);
+            double[] features = extractFeatures(decodeImage(payload.imageBytes));
+            if (learn(features, payload.label)) {
+                ack(channel, tag);
+            } else {
+                reject(channel, tag);
             }
-        };
+            logFeedbackStats();
+        } catch (Exception e) {
+            e.printStackTrace();
+            reject(channel, tag);
+        }
+    }
 
-        channel.basicConsume(QUEUE, false, deliverCallback, consumerTag -> {});
+    private static final AtomicLong lastFeedbackLog = new AtomicLong();
+
+    // resumo do feedback a cada 100 mensagens (contadores também em /metrics: online_inserts/online_rejected)
+    static void logFeedbackStats() {
+        long seen = onlineLearner.inserted() + onlineLearner.rejected();
+        long last = lastFeedbackLog.get();
+        if (seen / 100 != last / 100 && lastFeedbackLog.compareAndSet(last, seen)) {
+            System.out.println(String.format("[Face][feedback] inseridas=%d descartadas=%d -> amostras=%d (insert médio %.1fus)",
+                    onlineLearner.inserted(), onlineLearner.rejected(), ((FlatKnn) model.get().classifier).size(),
+                    onlineLearner.avgInsertMicros()));
+        }
     }
 
-    // Substitui a antiga trainModel()
-    static void trainModel(String datasetDir, boolean forceSynthetic) {
-        if (!forceSynthetic) {
+    // mesmo lock do swapModel: o feedback não se perde entre a cópia para o modelo novo e a troca
+    static synchronized boolean learn(double[] features, String label) {
+        ModelSnapshot m = model.get();
+        if (!onlineLearner.learn(m, features, label)) return false;
+        // predições em cache podem mudar com a amostra nova: invalida no próximo flushStaleCache
+        predictionCache.markStale();
+        return true;
+    }
+
+    // invalidação em lote: com feedback contínuo o cache era zerado a cada amostra e nunca acertava
+    static synchronized void flushStaleCache() {
+        if (!predictionCache.takeStale()) return;
+        predictionCache.invalidate();
+        model.set(model.get().withCacheGeneration(predictionCache.generation()));
+    }
+
+    // decode -> features -> predict -> ack (mesmo caminho nos modos sequencial e concorrente)
+    static void handleDelivery(Channel channel, Delivery delivery) throws IOException {
+        long start = System.nanoTime();
+        MessagePayload payload;
+        ModelSnapshot m;
+        double[] features;
+        int pred;
+        String label;
+        try {
+            payload = readPayload(delivery);
+            long t = metrics.lap(ConsumerMetrics.PARSE, start);
+            // uma leitura por mensagem: modelo, labels e cache consistentes mesmo com troca no meio
+            m = model.get();
+            long key = predictionCache.enabled() ? PredictionCache.hash(payload.imageBytes) : 0L;
+            PredictionCache.Entry cached = predictionCache.get(key, m.cacheGeneration);
+            if (cached != null) {
+                // mesma imagem já classificada por este modelo -> pula decode/features/predict
+                features = cached.features;
+                pred = cached.prediction;
+            } else {
+                BufferedImage img = decodeImage(payload.imageBytes);
+                t = metrics.lap(ConsumerMetrics.DECODE, t);
+                features = extractFeatures(img);
+                t = metrics.lap(ConsumerMetrics.FEATURES, t);
+                pred = m.classifier.predict(features);
+                t = metrics.lap(ConsumerMetrics.PREDICT, t);
+                predictionCache.put(key, m.cacheGeneration, new PredictionCache.Entry(pred, features));
+            }
+            label = m.label(pred);
+
+            // simulate slow processing (longer than generator interval)
+            if (processingDelayMs > 0) Thread.sleep(processingDelayMs);
+        } catch (Exception e) {
+            e.printStackTrace();
+            metrics.error();
+            retries.fail(channel, delivery, e);
+            return;
+        }
+
+        // fora do try: depois do ack a entrega não pode mais passar pelo retries.fail (seria um segundo ack
+        // da mesma tag e o broker fecharia o channel); falha do próprio ack sobe para quem chamou
+        long t = System.nanoTime();
+        ack(channel, delivery.getEnvelope().getDeliveryTag());
+        long done = System.nanoTime();
+        metrics.stage(ConsumerMetrics.ACK, done - t);
+        metrics.stage(ConsumerMetrics.SERVICE, done - start);
+        metrics.endToEnd(payload.timestamp);
+        metrics.processed(1);
+        if (results != null) results.add(payload.id, label, m.tag, done - start);
+        predictionLog.prediction(m.tag, payload.id, label, done - start, verbose ? features : null);
+        logCacheStats();
+    }
+
+    // Lote: features de todas as mensagens -> um único predict -> nack só das que falharam -> um ack múltiplo
+    static void handleBatch(Channel channel, List<Delivery> batch) throws Exception {
+        int n = batch.size();
+        MessagePayload[] payloads = new MessagePayload[n];
+        double[][] features = new double[n][];
+        int[] preds = new int[n];
+        long[] keys = new long[n];
+        Exception[] errors = new Exception[n];
+        boolean[] miss = new boolean[n];
+        ModelSnapshot m = model.get();
+        int misses = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
             try {
-                Optional<TrainTestData> dsOpt = loadLocalDataset(datasetDir);
-                if (dsOpt.isPresent()) {
-                    TrainTestData ds = dsOpt.get();
-                    knnModel = KNN.fit(ds.xTrain, ds.yTrain, 3);
-                    usingDataset = true;
-                    modelTag = "DATASET";
-                    // avaliação + matriz confusão
-                    int correct = 0;
-                    int[][] cm = new int[2][2]; // [pred][real] 0=angry 1=happy
-                    for (int i = 0; i < ds.xTest.length; i++) {
-                        int yTrue = ds.yTest[i];
-                        int yPred = knnModel.predict(ds.xTest[i]);
-                        if (yPred == yTrue) correct++;
-                        cm[yPred][yTrue]++;
-                    }
-                    double acc = ds.xTest.length == 0 ? 0.0 : correct / (double) ds.xTest.length;
-                    System.out.println("Dataset carregado de: " + datasetDir);
-                    System.out.println("Imagens: happy=" + ds.happyCount + " angry=" + ds.angryCount);
-                    System.out.println("Split: train=" + ds.xTrain.length + " test=" + ds.xTest.length);
-                    System.out.println(String.format("Acurácia teste=%.3f", acc));
-                    System.out.println("Matriz de confusão (pred x real) [angry,happy]:");
-                    System.out.println(" pred=angry -> [" + cm[0][0] + " " + cm[0][1] + "]");
-                    System.out.println(" pred=happy -> [" + cm[1][0] + " " + cm[1][1] + "]");
-                    if (verbose && ds.sampleFeature != null) {
-                        System.out.println("Exemplo de feature (primeira imagem): " + Arrays.toString(ds.sampleFeature));
-                    }
-                    return;
+                long t = System.nanoTime();
+                payloads[i] = readPayload(batch.get(i));
+                t = metrics.lap(ConsumerMetrics.PARSE, t);
+                keys[i] = predictionCache.enabled() ? PredictionCache.hash(payloads[i].imageBytes) : 0L;
+                PredictionCache.Entry cached = predictionCache.get(keys[i], m.cacheGeneration);
+                if (cached != null) {
+                    features[i] = cached.features;
+                    preds[i] = cached.prediction;
                 } else {
-                    System.out.println("Dataset não encontrado/vazio em " + datasetDir + " -> fallback sintético.");
+                    BufferedImage img = decodeImage(payloads[i].imageBytes);
+                    t = metrics.lap(ConsumerMetrics.DECODE, t);
+                    features[i] = extractFeatures(img);
+                    metrics.lap(ConsumerMetrics.FEATURES, t);
+                    miss[i] = true;
+                    misses++;
                 }
             } catch (Exception e) {
-                System.out.println("Falha ao usar dataset real: " + e.getMessage() + " -> fallback sintético.");
+                System.out.println("[Face] falha no lote, tag=" + batch.get(i).getEnvelope().getDeliveryTag() + ": " + e);
+                features[i] = null;
+                errors[i] = e;
             }
+        }
+
+        // falhas primeiro (retry/DLQ + ack individual): o ack múltiplo abaixo só cobre as que deram certo
+        long lastOkTag = -1;
+        for (int i = 0; i < n; i++) {
+            long tag = batch.get(i).getEnvelope().getDeliveryTag();
+            if (features[i] == null) {
+                metrics.error();
+                retries.fail(channel, batch.get(i), errors[i]);
+            } else {
+                lastOkTag = tag;
+            }
+        }
+        if (lastOkTag < 0) return;
+
+        // só as imagens fora do cache vão para o predict em lote
+        if (misses > 0) {
+            double[][] x = new double[misses][];
+            for (int i = 0, j = 0; i < n; i++) {
+                if (miss[i]) x[j++] = features[i];
+            }
+            int[] missPreds;
+            long t = System.nanoTime();
+            try {
+                missPreds = m.classifier.predict(x);
+            } catch (Exception e) {
+                e.printStackTrace();
+                for (int i = 0; i < n; i++) {
+                    if (features[i] == null) continue;
+                    metrics.error();
+                    retries.fail(channel, batch.get(i), e);
+                }
+                return;
+            }
+            // custo do predict em lote amortizado por mensagem
+            long perMessage = (System.nanoTime() - t) / misses;
+            for (int i = 0; i < misses; i++) metrics.stage(ConsumerMetrics.PREDICT, perMessage);
+            for (int i = 0, j = 0; i < n; i++) {
+                if (!miss[i]) continue;
+                preds[i] = missPreds[j++];
+                predictionCache.put(keys[i], m.cacheGeneration, new PredictionCache.Entry(preds[i], features[i]));
+            }
+        }
+
+        // slow processing: o custo simulado continua por mensagem; o lote só economiza predict e acks
+        if (processingDelayMs > 0) Thread.sleep(processingDelayMs * n);
+
+        long t = System.nanoTime();
+        ackUpTo(channel, lastOkTag);
+        long done = System.nanoTime();
+        metrics.stage(ConsumerMetrics.ACK, done - t);
+        int acked = 0;
+        for (int i = 0; i < n; i++) {
+            if (features[i] == null) continue;
+            metrics.stage(ConsumerMetrics.SERVICE, done - start);
+            metrics.endToEnd(payloads[i].timestamp);
+            String label = m.label(preds[i]);
+            if (results != null) results.add(payloads[i].id, label, m.tag, done - start);
+            predictionLog.prediction(m.tag, payloads[i].id, label, done - start, verbose ? features[i] : null);
+            acked++;
+        }
+        metrics.processed(acked);
+        logCacheStats();
+    }
+
+    // chamado pelos workers em paralelo: o CAS escolhe uma thread só para imprimir cada milhar
+    private static final AtomicLong lastCacheLog = new AtomicLong();
+
+    // resumo do cache a cada ~1000 consultas
+    static void logCacheStats() {
+        if (!predictionCache.enabled()) return;
+        long lookups = predictionCache.hits() + predictionCache.misses();
+        long last = lastCacheLog.get();
+        if (lookups / 1000 != last / 1000 && lastCacheLog.compareAndSet(last, lookups)) {
+            System.out.println("[Face] " + predictionCache.stats());
+        }
+    }
+
+    // Channel não é thread-safe para escrita concorrente -> serializa ack/nack
+    static void ack(Channel channel, long deliveryTag) throws IOException {
+        synchronized (channel) {
+            channel.basicAck(deliveryTag, false);
+        }
+    }
+
+    // ack múltiplo: confirma todas as entregas pendentes até deliveryTag (inclusive)
+    static void ackUpTo(Channel channel, long deliveryTag) throws IOException {
+        synchronized (channel) {
+            channel.basicAck(deliveryTag, true);
+        }
+    }
+
+    // descarta sem requeue: mensagem inválida nunca vai ser processada
+    static void reject(Channel channel, long deliveryTag) throws IOException {
+        synchronized (channel) {
+            channel.basicReject(deliveryTag, false);
+        }
+    }
+
+    // Substitui a antiga trainModel(): dataset real ou fallback sintético, antes de consumir (FACE_MODEL_RELOAD=0)
+    static void trainModel(String datasetDir, boolean forceSynthetic) {
+        ModelSnapshot trained = null;
+        if (!forceSynthetic) {
+            trained = trainDataset(datasetDir);
+            if (trained == null) System.out.println("-> fallback sintético.");
         } else {
             System.out.println("FACE_FORCE_SYNTHETIC=1 -> ignorando dataset e usando sintético.");
         }
-        // Fallback sintético (código original adaptado)
+        swapModel(trained != null ? trained : trainSynthetic());
+    }
+
+    // publica o modelo para o hot path; predições em cache do modelo anterior deixam de valer
+    static synchronized void swapModel(ModelSnapshot next) {
+        if (onlineLearner != null) {
+            int replayed = onlineLearner.replayInto(next);
+            if (replayed > 0) System.out.println("[Face] feedback reaplicado no modelo novo: " + replayed + " amostras");
+        }
+        predictionCache.invalidate();
+        model.set(next.withCacheGeneration(predictionCache.generation()));
+    }
+
+    // treina e avalia no split de teste sem tocar no modelo ativo; null se o dataset não puder ser usado
+    static ModelSnapshot trainDataset(String datasetDir) {
+        try {
+            Optional<TrainTestData> dsOpt = loadLocalDataset(datasetDir);
+            if (!dsOpt.isPresent()) {
+                System.out.println("Dataset não encontrado/vazio em " + datasetDir);
+                return null;
+            }
+            TrainTestData ds = dsOpt.get();
+            Classifier<double[]> knn = fitModel(ds.xTrain, ds.yTrain);
+            // avaliação + matriz confusão (predições em paralelo no pool de ingestão)
+            Evaluation eval = Evaluation.run(knn, ds.xTest, ds.yTest, LABELS.length, ingestPool());
+            int[][] cm = eval.confusion; // [pred][real] 0=angry 1=happy
+            double acc = eval.accuracy();
+            System.out.println("Dataset carregado de: " + datasetDir);
+            System.out.println("Imagens: happy=" + ds.happyCount + " angry=" + ds.angryCount);
+            System.out.println("Split: train=" + ds.xTrain.length + " test=" + ds.xTest.length);
+            System.out.println(String.format("Acurácia teste=%.3f (%s, %.0f predições/s)", acc, eval.perClass(LABELS),
+                    eval.predictionsPerSecond()));
+            System.out.println("Matriz de confusão (pred x real) [angry,happy]:");
+            System.out.println(" pred=angry -> [" + cm[0][0] + " " + cm[0][1] + "]");
+            System.out.println(" pred=happy -> [" + cm[1][0] + " " + cm[1][1] + "]");
+            if (verbose && ds.sampleFeature != null) {
+                System.out.println("Exemplo de feature (primeira imagem): " + Arrays.toString(ds.sampleFeature));
+            }
+            if (decodeCompare) compareDecode(datasetDir);
+            return new ModelSnapshot(knn, LABELS, "DATASET", acc);
+        } catch (Exception e) {
+            System.out.println("Falha ao usar dataset real: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Relatório offline: split atual (holdout 80/20) + validação cruzada k-fold em treino+teste para cada k
+    // de FACE_EVAL_K (FACE_EVAL_FOLDS folds, mesmo embaralhamento para todos os k)
+    static void evaluateOffline(String datasetDir) throws IOException {
+        int folds = Integer.parseInt(System.getenv().getOrDefault("FACE_EVAL_FOLDS", "5"));
+        int[] ks = Arrays.stream(System.getenv().getOrDefault("FACE_EVAL_K", "1,3,5,7,9,11").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        long start = System.nanoTime();
+        Optional<TrainTestData> dsOpt = loadLocalDataset(datasetDir);
+        if (!dsOpt.isPresent()) {
+            System.out.println("[Face] dataset não encontrado/vazio em " + datasetDir);
+            return;
+        }
+        TrainTestData ds = dsOpt.get();
+        System.out.println(String.format("[Face] dataset %s: treino=%d teste=%d (carregado em %.1fs, %d threads, classificador %s)",
+                datasetDir, ds.xTrain.length, ds.xTest.length, (System.nanoTime() - start) / 1e9,
+                ingestPool().getParallelism(), classifierKind));
+
+        Evaluation split = Evaluation.run(fitModel(ds.xTrain, ds.yTrain), ds.xTest, ds.yTest, LABELS.length, ingestPool());
+        System.out.println(String.format("[Face] holdout 80/20, k=3: acurácia=%.3f, %s, %.0f predições/s",
+                split.accuracy(), split.perClass(LABELS), split.predictionsPerSecond()));
+
+        double[][] x = Stream.concat(Arrays.stream(ds.xTrain), Arrays.stream(ds.xTest)).toArray(double[][]::new);
+        int[] y = IntStream.concat(Arrays.stream(ds.yTrain), Arrays.stream(ds.yTest)).toArray();
+        int bestK = -1;
+        double bestAccuracy = -1;
+        for (int k : ks) {
+            Evaluation cv;
+            try {
+                cv = Evaluation.crossValidate(x, y, LABELS.length, folds, 42, (xt, yt) -> fitModel(xt, yt, k), ingestPool());
+            } catch (IllegalArgumentException e) {
+                System.out.println("[Face] k=" + k + " ignorado: " + e.getMessage());
+                continue;
+            }
+            System.out.println(String.format("[Face] k=%d, %d-fold: acurácia=%.3f ± %.3f, %s, %.0f predições/s",
+                    k, folds, cv.accuracy(), cv.foldStdDev(), cv.perClass(LABELS), cv.predictionsPerSecond()));
+            if (cv.accuracy() > bestAccuracy) {
+                bestAccuracy = cv.accuracy();
+                bestK = k;
+            }
+        }
+        if (bestK > 0) System.out.println(String.format("[Face] melhor k=%d (acurácia %d-fold %.3f)", bestK, folds, bestAccuracy));
+        ingestPool().shutdown();
+    }
+
+    // mesmo dataset/split decodificado em resolução reduzida e completa, sem feature store (só relatório);
+    // alocação por imagem x threads de ingestão = heap ocupado pelos rasters durante o carregamento
+    static void compareDecode(String datasetDir) {
+        ImageDecoder configured = datasetDecoder;
+        if (configured.maxSide() <= 0) {
+            System.out.println("[Face] FACE_DECODE_COMPARE: decode já é completo (FACE_DECODE_MAX_SIDE=0)");
+            return;
+        }
+        try {
+            ImageDecoder[] decoders = {new ImageDecoder(configured.maxSide()), new ImageDecoder(0)};
+            double[] acc = new double[decoders.length];
+            for (int d = 0; d < decoders.length; d++) {
+                // decoder próprio e sem feature store: nada do estado usado pelo treino é tocado
+                Optional<TrainTestData> dsOpt = loadLocalDataset(datasetDir, decoders[d], "");
+                if (!dsOpt.isPresent()) return;
+                TrainTestData ds = dsOpt.get();
+                acc[d] = Evaluation.run(fitModel(ds.xTrain, ds.yTrain), ds.xTest, ds.yTest, LABELS.length, ingestPool())
+                        .accuracy();
+                System.out.println(String.format("[Face] decode %s: acurácia teste=%.3f, %s",
+                        decoders[d].describe(), acc[d], decoders[d].stats()));
+            }
+            System.out.println(String.format("[Face] decode reduzido vs completo: diferença de acurácia %+.3f", acc[0] - acc[1]));
+        } catch (Exception e) {
+            System.out.println("[Face] comparação de decode falhou: " + e.getMessage());
+        }
+    }
+
+    // Fallback sintético (código original adaptado)
+    static ModelSnapshot trainSynthetic() {
         List<double[]> X = new ArrayList<>();
         List<Integer> Y = new ArrayList<>();
         int N = 400;
@@ -138,14 +671,29 @@ public class ConsumerFace {
         }
         double[][] xArr = X.toArray(new double[0][]);
         int[] yArr = Y.stream().mapToInt(i->i).toArray();
-        knnModel = KNN.fit(xArr, yArr, 3);
-        modelTag = "SYN";
-        usingDataset = false;
         System.out.println("Face model trained (synthetic fallback). Samples=" + N);
+        return new ModelSnapshot(fitModel(xArr, yArr), LABELS, "SYN", Double.NaN);
+    }
+
+    static Classifier<double[]> fitModel(double[][] x, int[] y) {
+        return fitModel(x, y, 3);
+    }
+
+    static Classifier<double[]> fitModel(double[][] x, int[] y, int k) {
+        if ("flat".equalsIgnoreCase(classifierKind)) {
+            // vagas extras para as amostras de feedback (mesmo stride, sem realocar)
+            return FlatKnn.fit(x, y, k, x.length + (onlineLearner != null ? onlineLearner.capacity : 0));
+        }
+        return KNN.fit(x, y, k);
     }
 
     // Carrega dataset local (happy=1, angry=0). Retorna Optional vazio se não existir.
     static Optional<TrainTestData> loadLocalDataset(String baseDir) throws IOException {
+        return loadLocalDataset(baseDir, datasetDecoder, featureStorePath);
+    }
+
+    // decoder e feature store explícitos (o FACE_DECODE_COMPARE carrega com outros sem mexer nos do treino)
+    static Optional<TrainTestData> loadLocalDataset(String baseDir, ImageDecoder decoder, String storePath) throws IOException {
         Path base = Paths.get(baseDir);
         Path happyDir = base.resolve("happy");
         Path angryDir = base.resolve("angry");
@@ -155,8 +703,11 @@ public class ConsumerFace {
 
         List<LabeledFeature> samples = new ArrayList<>();
         int[] counters = new int[2];
-        loadImagesFromDir(happyDir, 1, samples, counters);
-        loadImagesFromDir(angryDir, 0, samples, counters);
+        FeatureStore store = openFeatureStore(storePath, decoder);
+        List<List<Path>> files = listImagesParallel(happyDir, angryDir);
+        loadImages(files.get(0), 1, samples, counters, decoder, store);
+        loadImages(files.get(1), 0, samples, counters, decoder, store);
+        closeFeatureStore(store, storePath);
 
         if (samples.isEmpty()) return Optional.empty();
 
@@ -179,30 +730,108 @@ public class ConsumerFace {
         return Optional.of(ttd);
     }
 
-    // === (RESTAURADO) método original de carregamento sem contadores ===
-    static void loadImagesFromDir(Path dir, int label, List<LabeledFeature> out) throws IOException {
-        if (!Files.isDirectory(dir)) return;
+    // decodifica em paralelo, mas adiciona em ordem -> mesmo shuffle/split para qualquer nº de threads
+    static void loadImages(List<Path> files, int label, List<LabeledFeature> out, ImageDecoder decoder, FeatureStore store) {
+        for (double[] f : loadFeaturesParallel(files, decoder, store)) {
+            if (f != null) out.add(new LabeledFeature(f, label));
+        }
+    }
+
+    static void loadImages(List<Path> files, int label, List<LabeledFeature> out, int[] counters,
+                           ImageDecoder decoder, FeatureStore store) {
+        int before = out.size();
+        loadImages(files, label, out, decoder, store);
+        counters[label] += (out.size() - before);
+    }
+
+    private static ForkJoinPool ingestPool;
+
+    // pool de ingestão do dataset (FACE_INGEST_THREADS, padrão = núcleos disponíveis)
+    static synchronized ForkJoinPool ingestPool() {
+        if (ingestPool == null) {
+            int threads = Integer.parseInt(System.getenv().getOrDefault("FACE_INGEST_THREADS",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            ingestPool = new ForkJoinPool(Math.max(1, threads));
+        }
+        return ingestPool;
+    }
+
+    // walk + filtro de extensões; a ordem do walk é preservada (define o split após o shuffle)
+    static List<Path> listImages(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return Collections.emptyList();
         try (Stream<Path> st = Files.walk(dir)) {
-            for (Path p : st.filter(Files::isRegularFile)
+            return st.filter(Files::isRegularFile)
                     .filter(pp -> {
                         String n = pp.getFileName().toString().toLowerCase();
                         return n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".png");
-                    }).collect(Collectors.toList())) {
-                try {
-                    BufferedImage img = ImageIO.read(p.toFile());
-                    if (img == null) continue;
-                    double[] f = extractFeatures(img);
-                    out.add(new LabeledFeature(f, label));
-                } catch (Exception ignore) {}
-            }
+                    }).collect(Collectors.toList());
         }
     }
 
-    // === Sobrecarga com contadores corrigida ===
-    static void loadImagesFromDir(Path dir, int label, List<LabeledFeature> out, int[] counters) throws IOException {
-        int before = out.size();
-        loadImagesFromDir(dir, label, out); // usa método base
-        counters[label] += (out.size() - before);
+    // lista vários diretórios em paralelo no pool de ingestão, devolvendo na ordem dos argumentos
+    static List<List<Path>> listImagesParallel(Path... dirs) {
+        List<ForkJoinTask<List<Path>>> tasks = new ArrayList<>(dirs.length);
+        for (Path dir : dirs) tasks.add(ingestPool().submit(() -> listImages(dir)));
+        List<List<Path>> out = new ArrayList<>(dirs.length);
+        for (ForkJoinTask<List<Path>> t : tasks) out.add(t.join());
+        return out;
+    }
+
+    // decode + extractFeatures em paralelo; resultado indexado como a entrada (null = ilegível)
+    static double[][] loadFeaturesParallel(List<Path> files, ImageDecoder decoder, FeatureStore store) {
+        double[][] feats = new double[files.size()][];
+        ingestPool().submit(() -> IntStream.range(0, files.size()).parallel().forEach(i -> {
+            try {
+                feats[i] = loadFeatures(files.get(i), decoder, store);
+            } catch (Exception ignore) {}
+        })).join();
+        return feats;
+    }
+
+    // a resolução do decode muda as features -> faz parte da versão do feature store
+    static int featureVersion(ImageDecoder decoder) {
+        return FEATURE_VERSION * 100_000 + Math.max(0, decoder.maxSide());
+    }
+
+    // null = sem feature store (path vazio)
+    static FeatureStore openFeatureStore(String path, ImageDecoder decoder) {
+        return path.isEmpty() ? null : FeatureStore.open(Paths.get(path), 3, featureVersion(decoder));
+    }
+
+    static void closeFeatureStore(FeatureStore store, String path) {
+        if (store == null) return;
+        try {
+            store.save();
+            System.out.println("Feature store " + path + ": reaproveitadas=" + store.hits() +
+                    " recalculadas=" + store.misses());
+        } catch (IOException e) {
+            System.out.println("Falha ao gravar feature store: " + e.getMessage());
+        }
+    }
+
+    // features de uma imagem do dataset; consulta o feature store (path+size+mtime) antes de decodificar
+    static double[] loadFeatures(Path p, ImageDecoder decoder, FeatureStore store) throws IOException {
+        BasicFileAttributes attrs = null;
+        if (store != null) {
+            attrs = Files.readAttributes(p, BasicFileAttributes.class);
+            double[] cached = store.lookup(p, attrs);
+            if (cached == FeatureStore.UNREADABLE) return null;
+            if (cached != null) return cached;
+        }
+        BufferedImage img;
+        try {
+            img = decoder.read(p);
+        } catch (IOException e) {
+            img = null;   // PNG/JPEG corrompido: ilegível como o formato desconhecido
+        }
+        if (img == null) {
+            // tombstone: não decodifica de novo no próximo início enquanto o arquivo não mudar
+            if (store != null) store.record(p, attrs, null);
+            return null;
+        }
+        double[] f = extractFeatures(img);
+        if (store != null) store.record(p, attrs, f);
+        return f;
     }
 
     // --- Image utilities (same rules as generator but local) ---
@@ -229,14 +858,63 @@ public class ConsumerFace {
         return img;
     }
 
+    // Aceita os dois formatos: binário (PNG no corpo + headers) e JSON legado com base64
+    static MessagePayload readPayload(Delivery delivery) {
+        AMQP.BasicProperties props = delivery.getProperties();
+        if (props != null && CONTENT_TYPE_PNG.equals(props.getContentType())) {
+            Map<String, Object> headers = props.getHeaders() != null ? props.getHeaders() : Collections.emptyMap();
+            MessagePayload p = new MessagePayload();
+            p.id = headerOr(headers, "id", props.getMessageId());
+            p.type = headerOr(headers, "type", props.getType());
+            p.timestamp = headerOr(headers, "timestamp", null);
+            p.label = headerOr(headers, "label", null);
+            p.imageBytes = delivery.getBody();
+            return p;
+        }
+        MessagePayload p = gson.fromJson(new String(delivery.getBody(), StandardCharsets.UTF_8), MessagePayload.class);
+        if (p == null || p.image == null) throw new IllegalArgumentException("payload sem imagem");
+        p.imageBytes = Base64.getDecoder().decode(p.image);
+        p.image = null;
+        return p;
+    }
+
+    // headers chegam como LongString -> converte para String
+    private static String headerOr(Map<String, Object> headers, String key, String fallback) {
+        Object v = headers.get(key);
+        return v != null ? v.toString() : fallback;
+    }
+
     static BufferedImage decodeImage(String base64) throws Exception {
-        byte[] bytes = Base64.getDecoder().decode(base64);
+        return decodeImage(Base64.getDecoder().decode(base64));
+    }
+
+    static BufferedImage decodeImage(byte[] bytes) throws Exception {
         try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes)) {
-            return ImageIO.read(bais);
+            BufferedImage img = ImageIO.read(bais);
+            // formato desconhecido/corrompido: erro permanente (vai direto para a DLQ)
+            if (img == null) throw new IllegalArgumentException("imagem ilegível (" + bytes.length + " bytes)");
+            return img;
         }
     }
 
+    // caminho rápido: somas por linha lidas direto do raster; layouts não suportados usam getRGB
     static double[] extractFeatures(BufferedImage img) {
+        long[] rows = RasterPixels.rowChannelSums(img);
+        if (rows == null) return extractFeaturesGeneric(img);
+        int w = img.getWidth(), h = img.getHeight();
+        double sumR = 0, sumG = 0, sumB = 0;
+        double sumUpper = 0, countUpper = 0, sumLower = 0, countLower = 0;
+        for (int y = 0; y < h; y++) {
+            long r = rows[3 * y], g = rows[3 * y + 1], b = rows[3 * y + 2];
+            double bright = (r + g + b) / 3.0;
+            sumR += r; sumG += g; sumB += b;
+            if (y < h/2) { sumUpper += bright; countUpper += w; }
+            else { sumLower += bright; countLower += w; }
+        }
+        return toFeatures(w, h, sumR, sumG, sumB, sumUpper, countUpper, sumLower, countLower);
+    }
+
+    static double[] extractFeaturesGeneric(BufferedImage img) {
         int w = img.getWidth(), h = img.getHeight();
         double sumR = 0, sumG = 0, sumB = 0;
         double sumUpper = 0, countUpper = 0, sumLower = 0, countLower = 0;
@@ -252,6 +930,11 @@ public class ConsumerFace {
                 else { sumLower += bright; countLower++; }
             }
         }
+        return toFeatures(w, h, sumR, sumG, sumB, sumUpper, countUpper, sumLower, countLower);
+    }
+
+    private static double[] toFeatures(int w, int h, double sumR, double sumG, double sumB,
+                                       double sumUpper, double countUpper, double sumLower, double countLower) {
         double pixelCount = w * h;
         double avgBrightness = (sumR + sumG + sumB) / (3.0 * pixelCount) / 255.0; // 0..1
         double upperAvg = (countUpper==0)?0: (sumUpper / countUpper) / 255.0;
@@ -282,6 +965,8 @@ public class ConsumerFace {
         String id;
         String type;
         String timestamp;
-        String image;
+        String image;                 // base64 (formato JSON legado)
+        transient byte[] imageBytes;  // bytes do PNG, preenchido por readPayload
+        String label;                 // só nas mensagens de feedback (face.label / team.label)
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.example.consumerface;
+
+import com.example.consumercommon.ImageClassifier;
+import com.example.consumercommon.ModelSnapshot;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Adaptador do ConsumerFace para o consumer-runtime: mesmo treino (FACE_* / DATASET_DIR), mesmas
+ * features e o mesmo modelo ativo. API pública do consumer para quem o hospeda (consumer-runtime).
+ */
+public final class FaceClassifier implements ImageClassifier {
+    @Override public String name() { return "face"; }
+    @Override public String queue() { return "queue_face"; }
+    @Override public String routingKey() { return "face"; }
+
+    @Override
+    public void train() {
+        ConsumerFace.configureModel();
+        ConsumerFace.trainModel(System.getenv().getOrDefault("DATASET_DIR", "./archive"),
+                "1".equals(System.getenv().getOrDefault("FACE_FORCE_SYNTHETIC", "0")));
+    }
+
+    @Override
+    public double[] extractFeatures(BufferedImage img) {
+        return ConsumerFace.extractFeatures(img);
+    }
+
+    @Override
+    public ModelSnapshot activeModel() {
+        return ConsumerFace.activeModel();
+    }
+}
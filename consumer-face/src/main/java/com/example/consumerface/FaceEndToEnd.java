@@ -0,0 +1,59 @@
+package com.example.consumerface;
+
+import com.example.consumercommon.DeliveryBatcher;
+import com.example.consumercommon.PredictionLog;
+import com.example.consumercommon.RetryHandler;
+import com.example.consumercommon.WorkerExecutors;
+import com.rabbitmq.client.Channel;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Entrada pública para o EndToEndBenchmark (módulo benchmarks): sobe o processamento do ConsumerFace
+ * num Channel qualquer (o broker em memória), nos mesmos modos do main: sequencial, workers e micro-batch.
+ * Sem o atraso simulado, sem publicação de resultados; modelo sintético (treino rápido e sem dataset).
+ */
+public final class FaceEndToEnd {
+    private FaceEndToEnd() {}
+
+    public static synchronized void start(Channel channel, String mode, int parallelism) throws Exception {
+        ConsumerFace.processingDelayMs = 0;
+        if (ConsumerFace.activeModel() == null) ConsumerFace.swapModel(ConsumerFace.trainSynthetic());
+        if (ConsumerFace.predictionLog == null) ConsumerFace.predictionLog = PredictionLog.start("Face", 4096, 1, 100);
+
+        channel.exchangeDeclare("images", "topic", true);
+        channel.queueDeclare("queue_face", true, false, false, null);
+        channel.queueBind("queue_face", "images", "face");
+        ConsumerFace.retries = new RetryHandler("images", "queue_face", "face", 3, 1000);
+        ConsumerFace.retries.declare(channel);
+
+        switch (mode) {
+            case "batch": {
+                channel.basicQos(parallelism * 2);
+                DeliveryBatcher batcher = new DeliveryBatcher(parallelism, 50,
+                        batch -> ConsumerFace.handleBatch(channel, batch));
+                batcher.start("e2e-face-batcher");
+                channel.basicConsume("queue_face", false, (tag, delivery) -> batcher.offer(delivery), tag -> {});
+                break;
+            }
+            case "workers": {
+                channel.basicQos(parallelism);
+                ExecutorService pool = WorkerExecutors.create("platform", parallelism, "e2e-face-worker");
+                channel.basicConsume("queue_face", false, (tag, delivery) -> pool.execute(() -> {
+                    try {
+                        ConsumerFace.handleDelivery(channel, delivery);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }), tag -> {});
+                break;
+            }
+            default:
+                channel.basicConsume("queue_face", false,
+                        (tag, delivery) -> ConsumerFace.handleDelivery(channel, delivery), tag -> {});
+        }
+    }
+
+    public static long processed() { return ConsumerFace.metrics.processedCount(); }
+    public static long errors() { return ConsumerFace.metrics.errorCount(); }
+}
@@ -0,0 +1,57 @@
+package com.example.consumerface;
+
+import com.example.consumercommon.FlatKnn;
+import com.example.consumercommon.PredictionCache;
+import com.google.gson.Gson;
+import com.rabbitmq.client.Delivery;
+import smile.classification.Classifier;
+import smile.classification.KNN;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Estágios do caminho por mensagem do ConsumerFace expostos um a um, para os benchmarks JMH
+ * (módulo benchmarks) medirem cada parte sem acesso aos membros package-private do consumer.
+ */
+public final class FaceStages {
+    public static final String CONTENT_TYPE_PNG = ConsumerFace.CONTENT_TYPE_PNG;
+    private static final Gson gson = new Gson();
+
+    private FaceStages() {}
+
+    /** Imagem sintética de face (a mesma do treino sintético). */
+    public static BufferedImage sampleImage(boolean happy) {
+        return ConsumerFace.makeFaceImage(happy);
+    }
+
+    /** Só o Gson do formato JSON legado, sem Base64 nem validação. */
+    public static Object parseJson(String json) {
+        return gson.fromJson(json, ConsumerFace.MessagePayload.class);
+    }
+
+    public static Object readPayload(Delivery delivery) {
+        return ConsumerFace.readPayload(delivery);
+    }
+
+    public static BufferedImage decodeImage(byte[] png) throws Exception {
+        return ConsumerFace.decodeImage(png);
+    }
+
+    public static double[] extractFeatures(BufferedImage img) {
+        return ConsumerFace.extractFeatures(img);
+    }
+
+    public static double[] extractFeaturesGeneric(BufferedImage img) {
+        return ConsumerFace.extractFeaturesGeneric(img);
+    }
+
+    /** Hash do cache de predições sobre os bytes crus da imagem. */
+    public static long contentHash(byte[] data) {
+        return PredictionCache.hash(data);
+    }
+
+    /** k-NN como o consumer treina: "flat" (FlatKnn, FACE_CLASSIFIER=flat) ou o KNN do smile. */
+    public static Classifier<double[]> fitKnn(String engine, double[][] x, int[] y, int k) {
+        return "flat".equals(engine) ? FlatKnn.fit(x, y, k) : KNN.fit(x, y, k);
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.consumerruntime;
+
+import com.example.consumercommon.ConsumerMetrics;
+import com.example.consumercommon.ImageClassifier;
+import com.example.consumercommon.ModelSnapshot;
+import com.example.consumercommon.PredictionLog;
+import com.example.consumercommon.RetryHandler;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Delivery;
+import com.sun.net.httpserver.HttpServer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Um único processo com vários classificadores ({@link ImageClassifier}) no lugar de um container
+ * por consumer. Compartilhado: a conexão com o RabbitMQ, o pool de threads ({@link WeightedScheduler})
+ * e os buffers de decode ({@link SharedDecoder}). Separado por classificador: channel (prefetch
+ * próprio), fila, retry/DLQ, log de predições e métricas.
+ *
+ * A CPU do pool é dividida por peso (FACE_WEIGHT, TEAM_WEIGHT): com as duas filas cheias, um
+ * classificador de peso 3 recebe ~3x a CPU do de peso 1; com uma fila vazia a outra usa tudo.
+ * Classificadores: RUNTIME_CLASSIFIERS=face,team (ou nomes de classe que implementam ImageClassifier).
+ */
+public class ConsumerRuntime {
+    private static final String EXCHANGE = "images";
+
+    // estado de cada classificador hospedado
+    static final class Hosted {
+        final ImageClassifier classifier;
+        final String prefix;   // FACE, TEAM: variáveis de ambiente
+        final ConsumerMetrics metrics;
+        WeightedScheduler.Lane lane;
+        Channel channel;
+        RetryHandler retries;
+        PredictionLog log;
+        // falhas que nem o RetryHandler conseguiu tratar (a entrega volta para a fila por nack)
+        final AtomicLong retryFailures = new AtomicLong();
+
+        Hosted(ImageClassifier classifier) {
+            this.classifier = classifier;
+            this.prefix = classifier.name().toUpperCase(Locale.ROOT);
+            this.metrics = new ConsumerMetrics(classifier.name());
+        }
+
+        String env(String key, String fallback) {
+            return System.getenv().getOrDefault(prefix + "_" + key, fallback);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = System.getenv().getOrDefault("RABBITMQ_HOST", "localhost");
+        String user = System.getenv().getOrDefault("RABBITMQ_USER", "guest");
+        String pass = System.getenv().getOrDefault("RABBITMQ_PASS", "guest");
+        String names = System.getenv().getOrDefault("RUNTIME_CLASSIFIERS", "face,team");
+        int threads = Integer.parseInt(System.getenv().getOrDefault("RUNTIME_THREADS",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int metricsPort = Integer.parseInt(System.getenv().getOrDefault("RUNTIME_METRICS_PORT", "9104"));
+        long summaryMs = Long.parseLong(System.getenv().getOrDefault("RUNTIME_SUMMARY_MS", "10000"));
+
+        List<Hosted> hosted = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.isBlank()) hosted.add(new Hosted(load(name.trim())));
+        }
+        if (hosted.isEmpty()) throw new IllegalArgumentException("RUNTIME_CLASSIFIERS vazio");
+
+        // treino em sequência antes de consumir (cada um com as variáveis do próprio consumer)
+        for (Hosted h : hosted) {
+            long start = System.nanoTime();
+            h.classifier.train();
+            System.out.println(String.format("[Runtime] %s treinado em %.1fs (model=%s)", h.classifier.name(),
+                    (System.nanoTime() - start) / 1e9, h.classifier.activeModel().tag));
+        }
+
+        WeightedScheduler scheduler = new WeightedScheduler(threads);
+        for (Hosted h : hosted) {
+            h.lane = scheduler.lane(h.classifier.name(), Integer.parseInt(h.env("WEIGHT", "1")));
+            h.log = PredictionLog.start(h.prefix.charAt(0) + h.prefix.substring(1).toLowerCase(Locale.ROOT),
+                    Integer.parseInt(h.env("LOG_BUFFER", "4096")),
+                    Integer.parseInt(h.env("LOG_SAMPLE", "1")),
+                    Integer.parseInt(h.env("LOG_RATE", "100")));
+        }
+        scheduler.start("consumer-runtime-worker");
+
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(host);
+        factory.setUsername(user);
+        factory.setPassword(pass);
+        Connection conn = factory.newConnection("consumer-runtime");
+
+        for (Hosted h : hosted) {
+            // channel próprio: prefetch e acks independentes dos outros classificadores
+            Channel channel = conn.createChannel();
+            channel.exchangeDeclare(EXCHANGE, "topic", true);
+            int prefetch = Integer.parseInt(h.env("PREFETCH", String.valueOf(threads * 2)));
+            if (prefetch > 0) channel.basicQos(prefetch);
+            channel.queueDeclare(h.classifier.queue(), true, false, false, null);
+            channel.queueBind(h.classifier.queue(), EXCHANGE, h.classifier.routingKey());
+            h.channel = channel;
+            h.retries = new RetryHandler(EXCHANGE, h.classifier.queue(), h.classifier.routingKey(),
+                    Integer.parseInt(h.env("RETRY_MAX", "3")),
+                    Long.parseLong(h.env("RETRY_BASE_MS", "1000")));
+            h.retries.declare(channel);
+            registerGauges(h, scheduler);
+            // a thread do client só enfileira na lane; decode/predict/ack rodam no pool compartilhado
+            channel.basicConsume(h.classifier.queue(), false,
+                    (consumerTag, delivery) -> h.lane.submit(() -> handle(h, delivery)), consumerTag -> {});
+            System.out.println("[Runtime] " + h.classifier.name() + ": fila " + h.classifier.queue() + ", prefetch=" +
+                    prefetch + ", peso=" + h.lane.weight);
+        }
+        serve(metricsPort, hosted);
+        startSummary(hosted, scheduler, summaryMs);
+
+        System.out.println("ConsumerRuntime waiting for messages... (" + hosted.size() + " classificadores, threads=" +
+                scheduler.threads() + ")");
+    }
+
+    // "face"/"team" ou o nome de uma classe com construtor público sem argumentos
+    static ImageClassifier load(String name) throws ReflectiveOperationException {
+        String className;
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "face": className = "com.example.consumerface.FaceClassifier"; break;
+            case "team": className = "com.example.consumerteam.TeamClassifier"; break;
+            default: className = name;
+        }
+        return (ImageClassifier) Class.forName(className).getDeclaredConstructor().newInstance();
+    }
+
+    // parse -> decode -> features -> predict -> ack, nas threads do scheduler; nenhuma falha antes do ack
+    // volta para o scheduler: vai para retry/DLQ como nos consumers standalone
+    static void handle(Hosted h, Delivery delivery) {
+        ConsumerMetrics metrics = h.metrics;
+        long start = System.nanoTime();
+        SharedDecoder.Payload payload;
+        String tag, label;
+        long t;
+        try {
+            payload = SharedDecoder.parse(delivery);
+            t = metrics.lap(ConsumerMetrics.PARSE, start);
+            BufferedImage img = SharedDecoder.decode(payload.imageBytes);
+            t = metrics.lap(ConsumerMetrics.DECODE, t);
+            // img é o buffer da thread: as features precisam sair antes do próximo decode
+            double[] features = h.classifier.extractFeatures(img);
+            t = metrics.lap(ConsumerMetrics.FEATURES, t);
+            // uma leitura do modelo ativo: predição, rótulos e tag do mesmo snapshot
+            ModelSnapshot m = h.classifier.activeModel();
+            tag = m.tag;
+            int pred = m.classifier.predict(features);
+            t = metrics.lap(ConsumerMetrics.PREDICT, t);
+            label = pred >= 0 && pred < m.labels.length ? m.label(pred) : String.valueOf(pred);
+        } catch (Throwable e) {
+            // inclusive Error do decode (ex.: OutOfMemoryError com imagem enorme): vira retry/DLQ
+            fail(h, delivery, e);
+            return;
+        }
+
+        // ack fora do try do retries.fail: entrega já confirmada nunca é reenviada (nem confirmada duas vezes)
+        try {
+            synchronized (h.channel) {
+                h.channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[Runtime] " + h.classifier.name() + ": ack falhou: " + e);
+            metrics.error();
+            return;
+        }
+        long done = System.nanoTime();
+        metrics.stage(ConsumerMetrics.ACK, done - t);
+        metrics.stage(ConsumerMetrics.SERVICE, done - start);
+        metrics.endToEnd(payload.timestamp);
+        metrics.processed(1);
+        h.log.prediction(tag, payload.id, label, done - start, null);
+    }
+
+    // retry/DLQ pelo RetryHandler (que confirma a entrega original); se nem ele conseguir publicar,
+    // nack com requeue: a entrega nunca fica sem ack nem retry (channel fechado = o broker já a devolve)
+    static void fail(Hosted h, Delivery delivery, Throwable error) {
+        h.metrics.error();
+        try {
+            h.retries.fail(h.channel, delivery, error);
+        } catch (IOException | RuntimeException e) {
+            h.retryFailures.incrementAndGet();
+            System.out.println("[Runtime] " + h.classifier.name() + ": retry falhou (" + e + "), nack com requeue");
+            try {
+                synchronized (h.channel) {
+                    h.channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
+                }
+            } catch (IOException | RuntimeException ignore) {
+                // channel fechado: a entrega sem ack volta para a fila sozinha
+            }
+        }
+    }
+
+    static void registerGauges(Hosted h, WeightedScheduler scheduler) {
+        ConsumerMetrics m = h.metrics;
+        m.gauge("weight", "Peso do classificador na divisão da CPU do pool", () -> h.lane.weight);
+        m.gauge("cpu_share_permille", "Fração da CPU do pool usada pelo classificador (por mil)",
+                () -> Math.round(scheduler.share(h.lane) * 1000));
+        m.gauge("cpu_ms", "CPU consumida pelas tarefas do classificador (ms)", () -> h.lane.cpuNanos() / 1_000_000L);
+        m.gauge("queued_tasks", "Mensagens recebidas aguardando uma thread do pool", h.lane::queued);
+        m.gauge("task_failures", "Tarefas que lançaram exceção para o pool", h.lane::failed);
+        m.gauge("retry_failures", "Falhas sem retry possível, devolvidas à fila por nack", h.retryFailures::get);
+        m.gauge("retried", "Mensagens reenviadas para retry com atraso", h.retries::retried);
+        m.gauge("dead_lettered", "Mensagens enviadas para " + h.retries.deadQueue(), h.retries::deadLettered);
+        m.gauge("log_written", "Predições escritas no log", h.log::written);
+        m.gauge("log_suppressed", "Predições fora do log por amostragem/limite por segundo", h.log::suppressed);
+        m.gauge("log_dropped", "Predições fora do log por buffer cheio", h.log::dropped);
+    }
+
+    // um /metrics com as métricas de todos os classificadores (prefixos face_, team_, ...)
+    static void serve(int port, List<Hosted> hosted) throws IOException {
+        if (port <= 0) return;
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            StringBuilder sb = new StringBuilder();
+            for (Hosted h : hosted) sb.append(h.metrics.prometheus());
+            byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "runtime-metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        System.out.println("Métricas em http://0.0.0.0:" + port + "/metrics");
+    }
+
+    // [Runtime] face: 1200 msgs, cpu 74.8% (peso 3), fila 12 | team: ...
+    static void startSummary(List<Hosted> hosted, WeightedScheduler scheduler, long periodMs) {
+        if (periodMs <= 0) return;
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "runtime-summary");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> {
+            StringBuilder sb = new StringBuilder("[Runtime]");
+            for (Hosted h : hosted) {
+                sb.append(sb.length() > 9 ? " | " : " ").append(h.classifier.name()).append(": ")
+                        .append(h.lane.completed()).append(" msgs, ")
+                        .append(String.format(Locale.ROOT, "cpu %.1f%%", scheduler.share(h.lane) * 100))
+                        .append(" (peso ").append(h.lane.weight).append("), fila ").append(h.lane.queued());
+            }
+            System.out.println(sb);
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.consumerruntime;
+
+import com.google.gson.Gson;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Delivery;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Parse + decode compartilhados por todos os classificadores do runtime. Os buffers são por thread
+ * do pool, não por classificador: um PNG de face e um de time decodificados na mesma thread usam o
+ * mesmo ImageReader e, quando largura/altura/tipo coincidem, o mesmo BufferedImage de destino
+ * (ImageReadParam.setDestination) — sem alocar um raster novo por mensagem.
+ *
+ * Consequência: a imagem devolvida por decode() só vale até o próximo decode na mesma thread.
+ * O runtime extrai as features logo em seguida, na mesma tarefa, antes de soltá-la.
+ */
+final class SharedDecoder {
+    static final String CONTENT_TYPE_PNG = "image/png";
+    private static final Gson gson = new Gson();
+
+    static final class Payload {
+        String id;
+        String timestamp;
+        String image;                 // base64 (formato JSON legado)
+        transient byte[] imageBytes;
+    }
+
+    private static final ThreadLocal<ImageReader> PNG_READER = ThreadLocal.withInitial(() -> {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByMIMEType(CONTENT_TYPE_PNG);
+        return readers.hasNext() ? readers.next() : null;
+    });
+    private static final ThreadLocal<BufferedImage> DESTINATION = new ThreadLocal<>();
+
+    private SharedDecoder() {}
+
+    // mesmos dois formatos dos consumers: binário (PNG no corpo + headers) e JSON legado com base64
+    static Payload parse(Delivery delivery) {
+        AMQP.BasicProperties props = delivery.getProperties();
+        if (props != null && CONTENT_TYPE_PNG.equals(props.getContentType())) {
+            Map<String, Object> headers = props.getHeaders() != null ? props.getHeaders() : Collections.emptyMap();
+            Payload p = new Payload();
+            Object id = headers.get("id"), timestamp = headers.get("timestamp");
+            p.id = id != null ? id.toString() : props.getMessageId();
+            p.timestamp = timestamp != null ? timestamp.toString() : null;
+            p.imageBytes = delivery.getBody();
+            return p;
+        }
+        Payload p = gson.fromJson(new String(delivery.getBody(), StandardCharsets.UTF_8), Payload.class);
+        if (p == null || p.image == null) throw new IllegalArgumentException("payload sem imagem");
+        p.imageBytes = Base64.getDecoder().decode(p.image);
+        p.image = null;
+        return p;
+    }
+
+    static BufferedImage decode(byte[] bytes) throws IOException {
+        ImageReader reader = PNG_READER.get();
+        if (reader == null || !isPng(bytes)) return decodeGeneric(bytes);
+        // MemoryCacheImageInputStream: sem o arquivo temporário do ImageIO.createImageInputStream
+        try (MemoryCacheImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes))) {
+            reader.setInput(in, true, true);
+            int w = reader.getWidth(0), h = reader.getHeight(0);
+            // o tipo que o read() escolheria sozinho (o primeiro de getImageTypes; RGB 8 bits -> 3BYTE_BGR)
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            ImageTypeSpecifier type = types.hasNext() ? types.next() : null;
+            ImageReadParam param = reader.getDefaultReadParam();
+            BufferedImage dest = DESTINATION.get();
+            if (type != null && dest != null && dest.getWidth() == w && dest.getHeight() == h
+                    && type.getBufferedImageType() == dest.getType() && dest.getType() != BufferedImage.TYPE_CUSTOM) {
+                param.setDestination(dest);
+            }
+            BufferedImage img = reader.read(0, param);
+            DESTINATION.set(img);
+            return img;
+        } catch (IOException | RuntimeException e) {
+            // PNG que o reader compartilhado não aceitou: último recurso é o caminho padrão
+            return decodeGeneric(bytes);
+        } finally {
+            reader.reset();
+        }
+    }
+
+    private static BufferedImage decodeGeneric(byte[] bytes) throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(bytes));
+        // formato desconhecido/corrompido: erro permanente (vai direto para a DLQ)
+        if (img == null) throw new IllegalArgumentException("imagem ilegível (" + bytes.length + " bytes)");
+        return img;
+    }
+
+    private static boolean isPng(byte[] b) {
+        return b.length > 8 && (b[0] & 0xFF) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G';
+    }
+}
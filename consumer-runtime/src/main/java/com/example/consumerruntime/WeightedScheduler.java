@@ -0,0 +1,162 @@
+package com.example.consumerruntime;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool único de threads dividido entre os classificadores por peso de CPU (fair queuing).
+ * Cada classificador tem a sua lane (fila de tarefas + tempo virtual). Uma thread livre pega a
+ * tarefa da lane não vazia com menor tempo virtual; ao terminar, a lane avança
+ * cpu_da_tarefa / peso. Com as duas lanes sempre cheias, a CPU se divide na proporção dos pesos;
+ * se uma lane esvazia, a outra usa o pool inteiro (nada fica ocioso esperando a vez).
+ *
+ * Lane que volta a ter trabalho entra com o tempo virtual alinhado ao menor das lanes ativas:
+ * ficar parada não acumula crédito para depois monopolizar o pool.
+ * O custo é medido em CPU da thread (ThreadMXBean), não em tempo de parede: espera de I/O ou de
+ * lock não conta contra o peso do classificador.
+ */
+final class WeightedScheduler {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    final class Lane {
+        final String name;
+        final int weight;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private long virtualTime;   // guardado pelo lock do scheduler
+        private final AtomicLong cpuNanos = new AtomicLong(), completed = new AtomicLong(), failed = new AtomicLong();
+
+        private Lane(String name, int weight) {
+            this.name = name;
+            this.weight = Math.max(1, weight);
+        }
+
+        void submit(Runnable task) {
+            lock.lock();
+            try {
+                if (tasks.isEmpty()) {
+                    // reativação: sem crédito acumulado pelo tempo parado
+                    long min = minActiveVirtualTime();
+                    if (min != Long.MAX_VALUE && virtualTime < min) virtualTime = min;
+                }
+                tasks.addLast(task);
+                ready.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long queued() {
+            lock.lock();
+            try {
+                return tasks.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long cpuNanos() { return cpuNanos.get(); }
+        long completed() { return completed.get(); }
+        long failed() { return failed.get(); }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final List<Lane> lanes = new ArrayList<>();
+    private final int threads;
+
+    WeightedScheduler(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    int threads() { return threads; }
+
+    Lane lane(String name, int weight) {
+        lock.lock();
+        try {
+            Lane lane = new Lane(name, weight);
+            lanes.add(lane);
+            return lane;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void start(String threadPrefix) {
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::workLoop, threadPrefix + "-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /** Fração da CPU do pool consumida pela lane até agora (0..1). */
+    double share(Lane lane) {
+        long total = 0;
+        lock.lock();
+        try {
+            for (Lane l : lanes) total += l.cpuNanos();
+        } finally {
+            lock.unlock();
+        }
+        return total == 0 ? 0.0 : lane.cpuNanos() / (double) total;
+    }
+
+    private void workLoop() {
+        while (true) {
+            Lane lane;
+            Runnable task;
+            lock.lock();
+            try {
+                while ((lane = next()) == null) ready.awaitUninterruptibly();
+                task = lane.tasks.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+            long before = cpuNow();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // as tarefas tratam as próprias falhas (ConsumerRuntime.handle); o que escapar só é contado,
+                // e a thread continua no pool em vez de morrer com um Error
+                lane.failed.incrementAndGet();
+            }
+            long used = Math.max(1, cpuNow() - before);
+            lane.cpuNanos.addAndGet(used);
+            lane.completed.incrementAndGet();
+            lock.lock();
+            try {
+                lane.virtualTime += used / lane.weight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // lane não vazia com menor tempo virtual (chamado com o lock)
+    private Lane next() {
+        Lane best = null;
+        for (Lane l : lanes) {
+            if (!l.tasks.isEmpty() && (best == null || l.virtualTime < best.virtualTime)) best = l;
+        }
+        return best;
+    }
+
+    private long minActiveVirtualTime() {
+        long min = Long.MAX_VALUE;
+        for (Lane l : lanes) {
+            if (!l.tasks.isEmpty()) min = Math.min(min, l.virtualTime);
+        }
+        return min;
+    }
+
+    private static long cpuNow() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
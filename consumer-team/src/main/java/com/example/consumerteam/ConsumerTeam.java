@@ -1,5 +1,22 @@
 package com.example.consumerteam;
 
+import com.example.consumercommon.AdaptiveController;
+import com.example.consumercommon.ConsumerMetrics;
+import com.example.consumercommon.DeliveryBatcher;
+import com.example.consumercommon.Evaluation;
+import com.example.consumercommon.FeatureStore;
+import com.example.consumercommon.FlatKnn;
+import com.example.consumercommon.ImageDecoder;
+import com.example.consumercommon.ModelReloader;
+import com.example.consumercommon.ModelSnapshot;
+import com.example.consumercommon.OnlineLearner;
+import com.example.consumercommon.PredictionCache;
+import com.example.consumercommon.PredictionLog;
+import com.example.consumercommon.RasterPixels;
+import com.example.consumercommon.ResultPublisher;
+import com.example.consumercommon.RetryHandler;
+import com.example.consumercommon.ShardCoordinator;
+import com.example.consumercommon.WorkerExecutors;
 import com.google.gson.Gson;
 import com.rabbitmq.client.*;
 
@@ -7,14 +24,26 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import javax.imageio.ImageIO;
 
+import smile.classification.Classifier;
 import smile.classification.KNN;
 
 /**
@@ -24,12 +53,42 @@ import smile.classification.KNN;
 public class ConsumerTeam {
     private static final String EXCHANGE = "images";
     private static final String QUEUE = "queue_team";
+    // imagens rotuladas para aprendizado online (TEAM_ONLINE=1); rótulo = classe do modelo ativo
+    // (CORINTHIANS/FLAMENGO/PALMEIRAS no dataset). O gerador não publica aqui: suas cores não são essas classes
+    private static final String FEEDBACK_QUEUE = "queue_team_label";
+    private static final String FEEDBACK_KEY = "team.label";
     private static final Gson gson = new Gson();
-
-    private static KNN<double[]> knnModel;
-    private static String[] LABEL_NAMES = {"RED","BLUE","GREEN"}; // default para sintético
-    private static String modelTag = "SYN"; // DATASET ou SYN
+    static final String CONTENT_TYPE_PNG = "image/png";
+
+    static final String[] SYNTHETIC_LABELS = {"RED","BLUE","GREEN"};
+    static final String[] DATASET_LABELS = {"CORINTHIANS","FLAMENGO","PALMEIRAS"};
+    // modelo KNN + labels + origem (DATASET ou SYN), trocados juntos no hot reload
+    private static final AtomicReference<ModelSnapshot> model = new AtomicReference<>();
+    // implementação do k-NN: smile (padrão) ou flat (matriz plana própria)
+    private static String classifierKind = "smile";
+    // aprendizado online pela fila de feedback (null = desligado)
+    private static OnlineLearner onlineLearner;
     private static boolean verbose = false;
+    // processamento lento simulado por mensagem/lote (TEAM_PROCESSING_DELAY_MS; 0 = só o custo real)
+    static long processingDelayMs = 1200;
+    // log das predições: ring buffer drenado por uma thread própria, com amostragem e limite por segundo
+    static PredictionLog predictionLog;
+    // cache de predições por hash dos bytes da imagem (tamanho 0 = desligado)
+    static PredictionCache predictionCache = new PredictionCache(0);
+    // histogramas por estágio + latência fim a fim, expostos em /metrics
+    static final ConsumerMetrics metrics = new ConsumerMetrics("team");
+    // falhas: retry com backoff (filas com TTL) e DLQ no fim, em vez de nack com requeue
+    static RetryHandler retries;
+    // predições publicadas em lote no exchange results (null = desligado)
+    private static ResultPublisher results;
+    // cache persistente de features do dataset (vazio = desligado)
+    private static String featureStorePath = "";
+    // decode do dataset com resolução limitada (TEAM_DECODE_MAX_SIDE, 0 = resolução completa)
+    private static ImageDecoder datasetDecoder = new ImageDecoder(0);
+    // TEAM_DECODE_COMPARE=1: relatório de acurácia/tempo/alocação do decode reduzido vs completo a cada treino
+    private static boolean decodeCompare = false;
+    // incrementar sempre que extractFeatures mudar -> invalida o feature store gravado
+    static final int FEATURE_VERSION = 1;
 
     public static void main(String[] args) throws Exception {
         // REMOVER chamada antiga trainModel();
@@ -37,10 +96,59 @@ public class ConsumerTeam {
         String user = System.getenv().getOrDefault("RABBITMQ_USER", "guest");
         String pass = System.getenv().getOrDefault("RABBITMQ_PASS", "guest");
         String datasetDir = System.getenv().getOrDefault("TEAM_DATASET_DIR", "./archive");
-        verbose = "1".equals(System.getenv().getOrDefault("TEAM_VERBOSE","0"));
         boolean forceSynthetic = "1".equals(System.getenv().getOrDefault("TEAM_FORCE_SYNTHETIC","0"));
-
-        trainModel(datasetDir, forceSynthetic);
+        configureModel();
+        // modo offline, sem broker: TEAM_MODE=evaluate ou "java -jar ... evaluate [diretório do dataset]"
+        if ("evaluate".equalsIgnoreCase(args.length > 0 ? args[0] : System.getenv().getOrDefault("TEAM_MODE", "consume"))) {
+            evaluateOffline(args.length > 1 ? args[1] : datasetDir);
+            return;
+        }
+        predictionLog = PredictionLog.start("Team",
+                Integer.parseInt(System.getenv().getOrDefault("TEAM_LOG_BUFFER", "4096")),
+                Integer.parseInt(System.getenv().getOrDefault("TEAM_LOG_SAMPLE", "1")),
+                Integer.parseInt(System.getenv().getOrDefault("TEAM_LOG_RATE", "100")));
+        predictionCache = new PredictionCache(Integer.parseInt(System.getenv().getOrDefault("TEAM_CACHE_SIZE", "0")));
+        metrics.cacheCounters(() -> predictionCache.hits(), () -> predictionCache.misses());
+        metrics.gauge("log_written", "Predições escritas no log", predictionLog::written);
+        metrics.gauge("log_suppressed", "Predições fora do log por amostragem/limite por segundo", predictionLog::suppressed);
+        metrics.gauge("log_dropped", "Predições fora do log por buffer cheio", predictionLog::dropped);
+        metrics.serve(Integer.parseInt(System.getenv().getOrDefault("TEAM_METRICS_PORT", "9102")));
+        // hot reload: consome já com o sintético, treina o dataset em background e observa o diretório
+        boolean reload = !forceSynthetic && "1".equals(System.getenv().getOrDefault("TEAM_MODEL_RELOAD", "1"));
+        // modo concorrente: TEAM_WORKERS>1 ativa o pool; TEAM_EXECUTOR=virtual|platform
+        int workers = Integer.parseInt(System.getenv().getOrDefault("TEAM_WORKERS", "1"));
+        String executorKind = System.getenv().getOrDefault("TEAM_EXECUTOR", "platform");
+        // micro-batch: TEAM_BATCH_SIZE>1 agrupa até N mensagens ou TEAM_BATCH_WAIT_MS (tem precedência sobre workers)
+        int batchSize = Integer.parseInt(System.getenv().getOrDefault("TEAM_BATCH_SIZE", "1"));
+        long batchWaitMs = Long.parseLong(System.getenv().getOrDefault("TEAM_BATCH_WAIT_MS", "50"));
+        // prefetch 0 = sem basicQos (comportamento original); no modo concorrente o padrão é 1 msg por worker
+        // e no modo batch 2 lotes, para o próximo lote já estar chegando enquanto o atual é classificado
+        String defaultPrefetch = batchSize > 1 ? String.valueOf(batchSize * 2) : workers > 1 ? String.valueOf(workers) : "0";
+        int prefetch = Integer.parseInt(System.getenv().getOrDefault("TEAM_PREFETCH", defaultPrefetch));
+        // controle adaptativo (AIMD) de prefetch + workers; implica modo concorrente
+        boolean adaptive = batchSize <= 1 && "1".equals(System.getenv().getOrDefault("TEAM_ADAPTIVE", "0"));
+        // sharded: consome das filas queue_team.i (routing key team.shard.i) divididas entre as instâncias
+        int shards = Integer.parseInt(System.getenv().getOrDefault("TEAM_SHARDS", "0"));
+
+        if (reload) {
+            swapModel(trainSynthetic());
+            ModelReloader reloader = new ModelReloader(() -> trainDataset(datasetDir), model::get, ConsumerTeam::swapModel,
+                    Double.parseDouble(System.getenv().getOrDefault("TEAM_RELOAD_MIN_ACCURACY", "0")),
+                    Double.parseDouble(System.getenv().getOrDefault("TEAM_RELOAD_TOLERANCE", "0.02")),
+                    Long.parseLong(System.getenv().getOrDefault("TEAM_RELOAD_DEBOUNCE_MS", "5000")),
+                    "Team");
+            reloader.requestReload("início");
+            reloader.watch(Paths.get(datasetDir));
+            // admin fora do servidor de métricas: só loopback por padrão (exposto de propósito com TEAM_ADMIN_BIND + token)
+            reloader.serveAdmin(System.getenv().getOrDefault("TEAM_ADMIN_BIND", "127.0.0.1"),
+                    Integer.parseInt(System.getenv().getOrDefault("TEAM_ADMIN_PORT", "9112")),
+                    System.getenv().getOrDefault("TEAM_ADMIN_TOKEN", ""),
+                    Long.parseLong(System.getenv().getOrDefault("TEAM_ADMIN_MIN_INTERVAL_MS", "60000")));
+            metrics.gauge("model_reloads", "Modelos publicados por hot reload", reloader::reloads);
+            metrics.gauge("model_reloads_rejected", "Modelos rejeitados na validação", reloader::rejected);
+        } else {
+            trainModel(datasetDir, forceSynthetic);
+        }
 
         ConnectionFactory factory = new ConnectionFactory();
         factory.setHost(host);
@@ -50,79 +158,508 @@ public class ConsumerTeam {
         Connection conn = factory.newConnection();
         Channel channel = conn.createChannel();
         channel.exchangeDeclare(EXCHANGE, "topic", true);
+        // no modo adaptativo o limite é aplicado pelo controlador (basicQos global do channel);
+        // sharded também usa o limite do channel, senão cada shard consumido teria o seu próprio prefetch
+        if (prefetch > 0 && !adaptive) channel.basicQos(prefetch, shards > 1);
+
+        ShardCoordinator sharding = shards > 1
+                ? new ShardCoordinator(conn, channel, EXCHANGE, QUEUE, "team", shards,
+                        Long.parseLong(System.getenv().getOrDefault("TEAM_SHARD_HEARTBEAT_MS", "2000")))
+                : null;
+        if (sharding != null) {
+            sharding.declareQueues();
+        } else {
+            channel.queueDeclare(QUEUE, true, false, false, null);
+            channel.queueBind(QUEUE, EXCHANGE, "team");
+        }
+        retries = new RetryHandler(EXCHANGE, QUEUE, "team",
+                Integer.parseInt(System.getenv().getOrDefault("TEAM_RETRY_MAX", "3")),
+                Long.parseLong(System.getenv().getOrDefault("TEAM_RETRY_BASE_MS", "1000")));
+        retries.declare(channel);
+        metrics.gauge("retried", "Mensagens reenviadas para retry com atraso", retries::retried);
+        metrics.gauge("dead_lettered", "Mensagens enviadas para " + retries.deadQueue(), retries::deadLettered);
+        results = ResultPublisher.start(conn, "team",
+                Integer.parseInt(System.getenv().getOrDefault("TEAM_RESULTS_BATCH", "100")),
+                Long.parseLong(System.getenv().getOrDefault("TEAM_RESULTS_FLUSH_MS", "200")));
+        if (results != null) {
+            metrics.gauge("results_published", "Predições publicadas no exchange results", results::published);
+            metrics.gauge("results_dropped", "Predições perdidas em falhas de publicação", results::dropped);
+        }
+
+        System.out.println("ConsumerTeam waiting for messages... (model=" + model.get().tag + "/" + classifierKind +
+                (batchSize > 1 ? ", batch=" + batchSize + "/" + batchWaitMs + "ms"
+                        : ", workers=" + workers + (workers > 1 || adaptive ? "/" + executorKind : "")) +
+                (adaptive ? ", adaptive" : ", prefetch=" + prefetch) + (sharding != null ? ", shards=" + shards : "") + ")");
 
-        channel.queueDeclare(QUEUE, true, false, false, null);
-        channel.queueBind(QUEUE, EXCHANGE, "team");
+        if (onlineLearner != null) startFeedbackConsumer(conn);
 
-        System.out.println("ConsumerTeam waiting for messages... (model=" + modelTag + ")");
+        if (batchSize > 1) {
+            DeliveryBatcher batcher = new DeliveryBatcher(batchSize, batchWaitMs, batch -> handleBatch(channel, batch));
+            batcher.start("consumer-team-batcher");
+            consume(channel, sharding, (consumerTag, delivery) -> batcher.offer(delivery));
+            return;
+        }
 
+        ExecutorService workerPool = workers > 1 || adaptive
+                ? WorkerExecutors.create(executorKind, Math.max(1, workers), "consumer-team-worker") : null;
+        AdaptiveController controller = adaptive ? startAdaptive(channel, workerPool, prefetch > 0 ? prefetch : workers) : null;
         DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            try {
-                String body = new String(delivery.getBody());
-                MessagePayload payload = gson.fromJson(body, MessagePayload.class);
-                BufferedImage img = decodeImage(payload.image);
-                double[] features = extractFeatures(img);
+            if (workerPool == null) {
+                handleDelivery(channel, delivery);
+                return;
+            }
+            // modo concorrente: a thread do client só repassa; ack/nack volta no mesmo channel
+            long arrived = System.nanoTime();
+            if (controller != null) controller.onStart();
+            workerPool.execute(() -> {
+                try {
+                    handleDelivery(channel, delivery);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    if (controller != null) controller.onComplete(System.nanoTime() - arrived);
+                }
+            });
+        };
 
-                int pred = knnModel.predict(features);
-                String team = LABEL_NAMES[pred];
+        consume(channel, sharding, deliverCallback);
+    }
 
-                // slow processing
-                Thread.sleep(1200);
+    // configuração de modelo/treino lida do ambiente (verbose, atraso simulado, classificador, online,
+    // feature store, decode); separada do main para o consumer-runtime treinar com as mesmas variáveis
+    static void configureModel() {
+        verbose = "1".equals(System.getenv().getOrDefault("TEAM_VERBOSE","0"));
+        processingDelayMs = Long.parseLong(System.getenv().getOrDefault("TEAM_PROCESSING_DELAY_MS", "1200"));
+        classifierKind = System.getenv().getOrDefault("TEAM_CLASSIFIER", "smile");
+        if ("1".equals(System.getenv().getOrDefault("TEAM_ONLINE", "0"))) {
+            // o KNN do smile não aceita inserções -> online learning usa o FlatKnn com vagas reservadas
+            if (!"flat".equalsIgnoreCase(classifierKind)) {
+                System.out.println("TEAM_ONLINE=1 requer o k-NN plano -> TEAM_CLASSIFIER=flat");
+                classifierKind = "flat";
+            }
+            onlineLearner = new OnlineLearner(
+                    Integer.parseInt(System.getenv().getOrDefault("TEAM_ONLINE_CAPACITY", "10000")),
+                    !"oldest".equalsIgnoreCase(System.getenv().getOrDefault("TEAM_ONLINE_EVICTION", "feedback")));
+        }
+        featureStorePath = System.getenv().getOrDefault("TEAM_FEATURE_STORE", "");
+        datasetDecoder = new ImageDecoder(Integer.parseInt(System.getenv().getOrDefault("TEAM_DECODE_MAX_SIDE", "0")));
+        decodeCompare = "1".equals(System.getenv().getOrDefault("TEAM_DECODE_COMPARE", "0"));
+    }
 
-                System.out.println("[Team][" + modelTag + "] id=" + payload.id + " -> predicted: " + team +
-                        (verbose ? (" features=" + Arrays.toString(features)) : ""));
-                channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
-            } catch (Exception e) {
-                e.printStackTrace();
-                channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
+    // modelo ativo (o swap é atômico: quem lê uma vez usa o mesmo classificador e rótulos até o fim)
+    static ModelSnapshot activeModel() {
+        return model.get();
+    }
+
+    static void consume(Channel channel, ShardCoordinator sharding, DeliverCallback callback) throws IOException {
+        if (sharding == null) {
+            channel.basicConsume(QUEUE, false, callback, consumerTag -> {});
+            return;
+        }
+        sharding.start(callback);
+        metrics.gauge("shards_owned", "Shards consumidos por esta instância", sharding::owned);
+    }
+
+    static AdaptiveController startAdaptive(Channel channel, ExecutorService workerPool, int initial) throws Exception {
+        Map<String, String> env = System.getenv();
+        AdaptiveController controller = new AdaptiveController(channel,
+                workerPool instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) workerPool : null,
+                initial,
+                Integer.parseInt(env.getOrDefault("TEAM_ADAPTIVE_MIN", "1")),
+                Integer.parseInt(env.getOrDefault("TEAM_ADAPTIVE_MAX", "64")),
+                Long.parseLong(env.getOrDefault("TEAM_ADAPTIVE_TARGET_MS", "0")),
+                Double.parseDouble(env.getOrDefault("TEAM_ADAPTIVE_TOLERANCE", "2.0")),
+                Long.parseLong(env.getOrDefault("TEAM_ADAPTIVE_INTERVAL_MS", "2000")),
+                processingDelayMs,
+                "Team");
+        controller.start();
+        metrics.gauge("concurrency_limit", "Limite atual de prefetch/concorrência (controle adaptativo)", controller::limit);
+        metrics.gauge("in_flight", "Mensagens recebidas ainda não confirmadas", controller::inFlight);
+        return controller;
+    }
+
+    // fila de feedback em channel próprio: não disputa o prefetch nem os acks do channel principal
+    static void startFeedbackConsumer(Connection conn) throws IOException {
+        Channel feedback = conn.createChannel();
+        feedback.basicQos(64);
+        feedback.queueDeclare(FEEDBACK_QUEUE, true, false, false, null);
+        feedback.queueBind(FEEDBACK_QUEUE, EXCHANGE, FEEDBACK_KEY);
+        metrics.gauge("online_inserts", "Amostras de feedback inseridas no k-NN", onlineLearner::inserted);
+        metrics.gauge("online_rejected", "Feedback descartado (rótulo desconhecido)", onlineLearner::rejected);
+        metrics.gauge("model_samples", "Amostras no k-NN ativo", () -> ((FlatKnn) model.get().classifier).size());
+        feedback.basicConsume(FEEDBACK_QUEUE, false, (consumerTag, delivery) -> handleFeedback(feedback, delivery), consumerTag -> {});
+        long invalidateMs = Long.parseLong(System.getenv().getOrDefault("TEAM_CACHE_INVALIDATE_MS", "1000"));
+        if (predictionCache.enabled() && invalidateMs > 0) {
+            Executors.newSingleThreadScheduledExecutor(WorkerExecutors.namedDaemon("team-cache-invalidate"))
+                    .scheduleWithFixedDelay(ConsumerTeam::flushStaleCache, invalidateMs, invalidateMs, TimeUnit.MILLISECONDS);
+        }
+        System.out.println("Team online learning: fila " + FEEDBACK_QUEUE + " (" + FEEDBACK_KEY + "), capacidade=" +
+                onlineLearner.capacity + ", eviction=" + (onlineLearner.keepBase ? "feedback" : "oldest"));
+    }
+
+    // imagem rotulada -> features -> insert no k-NN ativo (sem re-treino)
+    static void handleFeedback(Channel channel, Delivery delivery) throws IOException {
+        long tag = delivery.getEnvelope().getDeliveryTag();
+        try {
+            MessagePayload payload = readPayload(delivery);
+            double[] features = extractFeatures(decodeImage(payload.imageBytes));
+            if (learn(features, payload.label)) {
+                ack(channel, tag);
+            } else {
+                reject(channel, tag);
             }
-        };
+            logFeedbackStats();
+        } catch (Exception e) {
+            e.printStackTrace();
+            reject(channel, tag);
+        }
+    }
+
+    private static final AtomicLong lastFeedbackLog = new AtomicLong();
 
-        channel.basicConsume(QUEUE, false, deliverCallback, consumerTag -> {});
+    // resumo do feedback a cada 100 mensagens (contadores também em /metrics: online_inserts/online_rejected)
+    static void logFeedbackStats() {
+        long seen = onlineLearner.inserted() + onlineLearner.rejected();
+        long last = lastFeedbackLog.get();
+        if (seen / 100 != last / 100 && lastFeedbackLog.compareAndSet(last, seen)) {
+            System.out.println(String.format("[Team][feedback] inseridas=%d descartadas=%d -> amostras=%d (insert médio %.1fus)",
+                    onlineLearner.inserted(), onlineLearner.rejected(), ((FlatKnn) model.get().classifier).size(),
+                    onlineLearner.avgInsertMicros()));
+        }
     }
 
-    // Novo método unificado
-    static void trainModel(String datasetDir, boolean forceSynthetic) {
-        if (!forceSynthetic) {
+    // mesmo lock do swapModel: o feedback não se perde entre a cópia para o modelo novo e a troca
+    static synchronized boolean learn(double[] features, String label) {
+        ModelSnapshot m = model.get();
+        if (!onlineLearner.learn(m, features, label)) return false;
+        // predições em cache podem mudar com a amostra nova: invalida no próximo flushStaleCache
+        predictionCache.markStale();
+        return true;
+    }
+
+    // invalidação em lote: com feedback contínuo o cache era zerado a cada amostra e nunca acertava
+    static synchronized void flushStaleCache() {
+        if (!predictionCache.takeStale()) return;
+        predictionCache.invalidate();
+        model.set(model.get().withCacheGeneration(predictionCache.generation()));
+    }
+
+    // decode -> features -> predict -> ack (mesmo caminho nos modos sequencial e concorrente)
+    static void handleDelivery(Channel channel, Delivery delivery) throws IOException {
+        long start = System.nanoTime();
+        MessagePayload payload;
+        ModelSnapshot m;
+        double[] features;
+        int pred;
+        String team;
+        try {
+            payload = readPayload(delivery);
+            long t = metrics.lap(ConsumerMetrics.PARSE, start);
+            // uma leitura por mensagem: modelo, labels e cache consistentes mesmo com troca no meio
+            m = model.get();
+            long key = predictionCache.enabled() ? PredictionCache.hash(payload.imageBytes) : 0L;
+            PredictionCache.Entry cached = predictionCache.get(key, m.cacheGeneration);
+            if (cached != null) {
+                // mesma imagem já classificada por este modelo -> pula decode/features/predict
+                features = cached.features;
+                pred = cached.prediction;
+            } else {
+                BufferedImage img = decodeImage(payload.imageBytes);
+                t = metrics.lap(ConsumerMetrics.DECODE, t);
+                features = extractFeatures(img);
+                t = metrics.lap(ConsumerMetrics.FEATURES, t);
+                pred = m.classifier.predict(features);
+                t = metrics.lap(ConsumerMetrics.PREDICT, t);
+                predictionCache.put(key, m.cacheGeneration, new PredictionCache.Entry(pred, features));
+            }
+            team = m.label(pred);
+
+            // slow processing
+            if (processingDelayMs > 0) Thread.sleep(processingDelayMs);
+        } catch (Exception e) {
+            e.printStackTrace();
+            metrics.error();
+            retries.fail(channel, delivery, e);
+            return;
+        }
+
+        // fora do try: depois do ack a entrega não pode mais passar pelo retries.fail (seria um segundo ack
+        // da mesma tag e o broker fecharia o channel); falha do próprio ack sobe para quem chamou
+        long t = System.nanoTime();
+        ack(channel, delivery.getEnvelope().getDeliveryTag());
+        long done = System.nanoTime();
+        metrics.stage(ConsumerMetrics.ACK, done - t);
+        metrics.stage(ConsumerMetrics.SERVICE, done - start);
+        metrics.endToEnd(payload.timestamp);
+        metrics.processed(1);
+        if (results != null) results.add(payload.id, team, m.tag, done - start);
+        predictionLog.prediction(m.tag, payload.id, team, done - start, verbose ? features : null);
+        logCacheStats();
+    }
+
+    // Lote: features de todas as mensagens -> um único predict -> nack só das que falharam -> um ack múltiplo
+    static void handleBatch(Channel channel, List<Delivery> batch) throws Exception {
+        int n = batch.size();
+        MessagePayload[] payloads = new MessagePayload[n];
+        double[][] features = new double[n][];
+        int[] preds = new int[n];
+        long[] keys = new long[n];
+        Exception[] errors = new Exception[n];
+        boolean[] miss = new boolean[n];
+        ModelSnapshot m = model.get();
+        int misses = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
             try {
-                Optional<Dataset> dsOpt = loadDataset(datasetDir);
-                if (dsOpt.isPresent()) {
-                    Dataset ds = dsOpt.get();
-                    LABEL_NAMES = new String[]{"CORINTHIANS","FLAMENGO","PALMEIRAS"};
-                    knnModel = KNN.fit(ds.xTrain, ds.yTrain, 3);
-                    modelTag = "DATASET";
-                    // avaliação
-                    int[][] cm = new int[3][3]; // pred x real
-                    int correct = 0;
-                    for (int i = 0; i < ds.xTest.length; i++) {
-                        int yTrue = ds.yTest[i];
-                        int yPred = knnModel.predict(ds.xTest[i]);
-                        if (yPred == yTrue) correct++;
-                        cm[yPred][yTrue]++;
-                    }
-                    double acc = ds.xTest.length == 0 ? 0.0 : correct / (double) ds.xTest.length;
-                    System.out.println("Dataset carregado de: " + datasetDir);
-                    System.out.println("Treino: COR=" + ds.trainCounts[0] + " FLA=" + ds.trainCounts[1] + " PAL=" + ds.trainCounts[2]);
-                    System.out.println("Teste : COR=" + ds.testCounts[0] + " FLA=" + ds.testCounts[1] + " PAL=" + ds.testCounts[2]);
-                    System.out.println(String.format("Acurácia teste=%.3f", acc));
-                    System.out.println("Matriz de confusão (pred x real) ordem [COR,FLA,PAL]:");
-                    for (int p = 0; p < 3; p++) {
-                        System.out.println(" pred=" + LABEL_NAMES[p] + " -> [" + cm[p][0] + " " + cm[p][1] + " " + cm[p][2] + "]");
-                    }
-                    if (verbose && ds.sampleFeature != null) {
-                        System.out.println("Exemplo feature primeira imagem treino: " + Arrays.toString(ds.sampleFeature));
-                    }
-                    return;
+                long t = System.nanoTime();
+                payloads[i] = readPayload(batch.get(i));
+                t = metrics.lap(ConsumerMetrics.PARSE, t);
+                keys[i] = predictionCache.enabled() ? PredictionCache.hash(payloads[i].imageBytes) : 0L;
+                PredictionCache.Entry cached = predictionCache.get(keys[i], m.cacheGeneration);
+                if (cached != null) {
+                    features[i] = cached.features;
+                    preds[i] = cached.prediction;
                 } else {
-                    System.out.println("Dataset inválido ou vazio em " + datasetDir + " -> fallback sintético.");
+                    BufferedImage img = decodeImage(payloads[i].imageBytes);
+                    t = metrics.lap(ConsumerMetrics.DECODE, t);
+                    features[i] = extractFeatures(img);
+                    metrics.lap(ConsumerMetrics.FEATURES, t);
+                    miss[i] = true;
+                    misses++;
                 }
             } catch (Exception e) {
-                System.out.println("Falha dataset: " + e.getMessage() + " -> fallback sintético.");
+                System.out.println("[Team] falha no lote, tag=" + batch.get(i).getEnvelope().getDeliveryTag() + ": " + e);
+                features[i] = null;
+                errors[i] = e;
+            }
+        }
+
+        // falhas primeiro (retry/DLQ + ack individual): o ack múltiplo abaixo só cobre as que deram certo
+        long lastOkTag = -1;
+        for (int i = 0; i < n; i++) {
+            long tag = batch.get(i).getEnvelope().getDeliveryTag();
+            if (features[i] == null) {
+                metrics.error();
+                retries.fail(channel, batch.get(i), errors[i]);
+            } else {
+                lastOkTag = tag;
+            }
+        }
+        if (lastOkTag < 0) return;
+
+        // só as imagens fora do cache vão para o predict em lote
+        if (misses > 0) {
+            double[][] x = new double[misses][];
+            for (int i = 0, j = 0; i < n; i++) {
+                if (miss[i]) x[j++] = features[i];
             }
+            int[] missPreds;
+            long t = System.nanoTime();
+            try {
+                missPreds = m.classifier.predict(x);
+            } catch (Exception e) {
+                e.printStackTrace();
+                for (int i = 0; i < n; i++) {
+                    if (features[i] == null) continue;
+                    metrics.error();
+                    retries.fail(channel, batch.get(i), e);
+                }
+                return;
+            }
+            // custo do predict em lote amortizado por mensagem
+            long perMessage = (System.nanoTime() - t) / misses;
+            for (int i = 0; i < misses; i++) metrics.stage(ConsumerMetrics.PREDICT, perMessage);
+            for (int i = 0, j = 0; i < n; i++) {
+                if (!miss[i]) continue;
+                preds[i] = missPreds[j++];
+                predictionCache.put(keys[i], m.cacheGeneration, new PredictionCache.Entry(preds[i], features[i]));
+            }
+        }
+
+        // slow processing: o custo simulado continua por mensagem; o lote só economiza predict e acks
+        if (processingDelayMs > 0) Thread.sleep(processingDelayMs * n);
+
+        long t = System.nanoTime();
+        ackUpTo(channel, lastOkTag);
+        long done = System.nanoTime();
+        metrics.stage(ConsumerMetrics.ACK, done - t);
+        int acked = 0;
+        for (int i = 0; i < n; i++) {
+            if (features[i] == null) continue;
+            metrics.stage(ConsumerMetrics.SERVICE, done - start);
+            metrics.endToEnd(payloads[i].timestamp);
+            String team = m.label(preds[i]);
+            if (results != null) results.add(payloads[i].id, team, m.tag, done - start);
+            predictionLog.prediction(m.tag, payloads[i].id, team, done - start, verbose ? features[i] : null);
+            acked++;
+        }
+        metrics.processed(acked);
+        logCacheStats();
+    }
+
+    // chamado pelos workers em paralelo: o CAS escolhe uma thread só para imprimir cada milhar
+    private static final AtomicLong lastCacheLog = new AtomicLong();
+
+    // resumo do cache a cada ~1000 consultas
+    static void logCacheStats() {
+        if (!predictionCache.enabled()) return;
+        long lookups = predictionCache.hits() + predictionCache.misses();
+        long last = lastCacheLog.get();
+        if (lookups / 1000 != last / 1000 && lastCacheLog.compareAndSet(last, lookups)) {
+            System.out.println("[Team] " + predictionCache.stats());
+        }
+    }
+
+    // Channel não é thread-safe para escrita concorrente -> serializa ack/nack
+    static void ack(Channel channel, long deliveryTag) throws IOException {
+        synchronized (channel) {
+            channel.basicAck(deliveryTag, false);
+        }
+    }
+
+    // ack múltiplo: confirma todas as entregas pendentes até deliveryTag (inclusive)
+    static void ackUpTo(Channel channel, long deliveryTag) throws IOException {
+        synchronized (channel) {
+            channel.basicAck(deliveryTag, true);
+        }
+    }
+
+    // descarta sem requeue: mensagem inválida nunca vai ser processada
+    static void reject(Channel channel, long deliveryTag) throws IOException {
+        synchronized (channel) {
+            channel.basicReject(deliveryTag, false);
+        }
+    }
+
+    // Novo método unificado
+    static void trainModel(String datasetDir, boolean forceSynthetic) {
+        ModelSnapshot trained = null;
+        if (!forceSynthetic) {
+            trained = trainDataset(datasetDir);
+            if (trained == null) System.out.println("-> fallback sintético.");
         } else {
             System.out.println("TEAM_FORCE_SYNTHETIC=1 -> ignorando dataset.");
         }
-        // Fallback sintético (código original adaptado)
+        swapModel(trained != null ? trained : trainSynthetic());
+    }
+
+    // publica o modelo para o hot path; predições em cache do modelo anterior deixam de valer
+    static synchronized void swapModel(ModelSnapshot next) {
+        if (onlineLearner != null) {
+            int replayed = onlineLearner.replayInto(next);
+            if (replayed > 0) System.out.println("[Team] feedback reaplicado no modelo novo: " + replayed + " amostras");
+        }
+        predictionCache.invalidate();
+        model.set(next.withCacheGeneration(predictionCache.generation()));
+    }
+
+    // treina e avalia no split de teste sem tocar no modelo ativo; null se o dataset não puder ser usado
+    static ModelSnapshot trainDataset(String datasetDir) {
+        try {
+            Optional<Dataset> dsOpt = loadDataset(datasetDir);
+            if (!dsOpt.isPresent()) {
+                System.out.println("Dataset inválido ou vazio em " + datasetDir);
+                return null;
+            }
+            Dataset ds = dsOpt.get();
+            Classifier<double[]> knn = fitModel(ds.xTrain, ds.yTrain);
+            // avaliação (predições em paralelo no pool de ingestão)
+            Evaluation eval = Evaluation.run(knn, ds.xTest, ds.yTest, DATASET_LABELS.length, ingestPool());
+            int[][] cm = eval.confusion; // pred x real
+            double acc = eval.accuracy();
+            System.out.println("Dataset carregado de: " + datasetDir);
+            System.out.println("Treino: COR=" + ds.trainCounts[0] + " FLA=" + ds.trainCounts[1] + " PAL=" + ds.trainCounts[2]);
+            System.out.println("Teste : COR=" + ds.testCounts[0] + " FLA=" + ds.testCounts[1] + " PAL=" + ds.testCounts[2]);
+            System.out.println(String.format("Acurácia teste=%.3f (%s, %.0f predições/s)", acc, eval.perClass(DATASET_LABELS),
+                    eval.predictionsPerSecond()));
+            System.out.println("Matriz de confusão (pred x real) ordem [COR,FLA,PAL]:");
+            for (int p = 0; p < 3; p++) {
+                System.out.println(" pred=" + DATASET_LABELS[p] + " -> [" + cm[p][0] + " " + cm[p][1] + " " + cm[p][2] + "]");
+            }
+            if (verbose && ds.sampleFeature != null) {
+                System.out.println("Exemplo feature primeira imagem treino: " + Arrays.toString(ds.sampleFeature));
+            }
+            if (decodeCompare) compareDecode(datasetDir);
+            return new ModelSnapshot(knn, DATASET_LABELS, "DATASET", acc);
+        } catch (Exception e) {
+            System.out.println("Falha dataset: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Relatório offline: split atual (treino/teste) + validação cruzada k-fold em treino+teste para cada k
+    // de TEAM_EVAL_K (TEAM_EVAL_FOLDS folds, mesmo embaralhamento para todos os k)
+    static void evaluateOffline(String datasetDir) throws IOException {
+        int folds = Integer.parseInt(System.getenv().getOrDefault("TEAM_EVAL_FOLDS", "5"));
+        int[] ks = Arrays.stream(System.getenv().getOrDefault("TEAM_EVAL_K", "1,3,5,7,9,11").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        long start = System.nanoTime();
+        Optional<Dataset> dsOpt = loadDataset(datasetDir);
+        if (!dsOpt.isPresent()) {
+            System.out.println("[Team] dataset não encontrado/vazio em " + datasetDir);
+            return;
+        }
+        Dataset ds = dsOpt.get();
+        System.out.println(String.format("[Team] dataset %s: treino=%d teste=%d (carregado em %.1fs, %d threads, classificador %s)",
+                datasetDir, ds.xTrain.length, ds.xTest.length, (System.nanoTime() - start) / 1e9,
+                ingestPool().getParallelism(), classifierKind));
+
+        Evaluation split = Evaluation.run(fitModel(ds.xTrain, ds.yTrain), ds.xTest, ds.yTest, DATASET_LABELS.length, ingestPool());
+        System.out.println(String.format("[Team] treino/teste, k=3: acurácia=%.3f, %s, %.0f predições/s",
+                split.accuracy(), split.perClass(DATASET_LABELS), split.predictionsPerSecond()));
+
+        double[][] x = Stream.concat(Arrays.stream(ds.xTrain), Arrays.stream(ds.xTest)).toArray(double[][]::new);
+        int[] y = IntStream.concat(Arrays.stream(ds.yTrain), Arrays.stream(ds.yTest)).toArray();
+        int bestK = -1;
+        double bestAccuracy = -1;
+        for (int k : ks) {
+            Evaluation cv;
+            try {
+                cv = Evaluation.crossValidate(x, y, DATASET_LABELS.length, folds, 42, (xt, yt) -> fitModel(xt, yt, k), ingestPool());
+            } catch (IllegalArgumentException e) {
+                System.out.println("[Team] k=" + k + " ignorado: " + e.getMessage());
+                continue;
+            }
+            System.out.println(String.format("[Team] k=%d, %d-fold: acurácia=%.3f ± %.3f, %s, %.0f predições/s",
+                    k, folds, cv.accuracy(), cv.foldStdDev(), cv.perClass(DATASET_LABELS), cv.predictionsPerSecond()));
+            if (cv.accuracy() > bestAccuracy) {
+                bestAccuracy = cv.accuracy();
+                bestK = k;
+            }
+        }
+        if (bestK > 0) System.out.println(String.format("[Team] melhor k=%d (acurácia %d-fold %.3f)", bestK, folds, bestAccuracy));
+        ingestPool().shutdown();
+    }
+
+    // mesmo dataset/split decodificado em resolução reduzida e completa, sem feature store (só relatório);
+    // alocação por imagem x threads de ingestão = heap ocupado pelos rasters durante o carregamento
+    static void compareDecode(String datasetDir) {
+        ImageDecoder configured = datasetDecoder;
+        if (configured.maxSide() <= 0) {
+            System.out.println("[Team] TEAM_DECODE_COMPARE: decode já é completo (TEAM_DECODE_MAX_SIDE=0)");
+            return;
+        }
+        try {
+            ImageDecoder[] decoders = {new ImageDecoder(configured.maxSide()), new ImageDecoder(0)};
+            double[] acc = new double[decoders.length];
+            for (int d = 0; d < decoders.length; d++) {
+                // decoder próprio e sem feature store: nada do estado usado pelo treino é tocado
+                Optional<Dataset> dsOpt = loadDataset(datasetDir, decoders[d], "");
+                if (!dsOpt.isPresent()) return;
+                Dataset ds = dsOpt.get();
+                acc[d] = Evaluation.run(fitModel(ds.xTrain, ds.yTrain), ds.xTest, ds.yTest, DATASET_LABELS.length, ingestPool())
+                        .accuracy();
+                System.out.println(String.format("[Team] decode %s: acurácia teste=%.3f, %s",
+                        decoders[d].describe(), acc[d], decoders[d].stats()));
+            }
+            System.out.println(String.format("[Team] decode reduzido vs completo: diferença de acurácia %+.3f", acc[0] - acc[1]));
+        } catch (Exception e) {
+            System.out.println("[Team] comparação de decode falhou: " + e.getMessage());
+        }
+    }
+
+    // Fallback sintético (código original adaptado)
+    static ModelSnapshot trainSynthetic() {
         List<double[]> X = new ArrayList<>();
         List<Integer> Y = new ArrayList<>();
         int N = 450;
@@ -136,14 +673,29 @@ public class ConsumerTeam {
         }
         double[][] xArr = X.toArray(new double[0][]);
         int[] yArr = Y.stream().mapToInt(i->i).toArray();
-        knnModel = KNN.fit(xArr, yArr, 3);
-        LABEL_NAMES = new String[]{"RED","BLUE","GREEN"};
-        modelTag = "SYN";
         System.out.println("Team model trained (synthetic). Samples=" + N);
+        return new ModelSnapshot(fitModel(xArr, yArr), SYNTHETIC_LABELS, "SYN", Double.NaN);
+    }
+
+    static Classifier<double[]> fitModel(double[][] x, int[] y) {
+        return fitModel(x, y, 3);
+    }
+
+    static Classifier<double[]> fitModel(double[][] x, int[] y, int k) {
+        if ("flat".equalsIgnoreCase(classifierKind)) {
+            // vagas extras para as amostras de feedback (mesmo stride, sem realocar)
+            return FlatKnn.fit(x, y, k, x.length + (onlineLearner != null ? onlineLearner.capacity : 0));
+        }
+        return KNN.fit(x, y, k);
     }
 
     // Carrega dataset: base/treino/<classe>, base/teste/<classe>
     static Optional<Dataset> loadDataset(String baseDir) throws IOException {
+        return loadDataset(baseDir, datasetDecoder, featureStorePath);
+    }
+
+    // decoder e feature store explícitos (o TEAM_DECODE_COMPARE carrega com outros sem mexer nos do treino)
+    static Optional<Dataset> loadDataset(String baseDir, ImageDecoder decoder, String storePath) throws IOException {
         Path base = Paths.get(baseDir);
         Path trainDir = base.resolve("treino");
         Path testDir  = base.resolve("teste");
@@ -157,12 +709,19 @@ public class ConsumerTeam {
         int[] trainCounts = new int[3];
         int[] testCounts  = new int[3];
 
+        FeatureStore store = openFeatureStore(storePath, decoder);
+        // listagem de todos os diretórios em paralelo: [treino/c0, teste/c0, treino/c1, ...]
+        Path[] dirs = new Path[classDirs.length * 2];
         for (int label = 0; label < classDirs.length; label++) {
-            Path tDir = trainDir.resolve(classDirs[label]);
-            Path vDir = testDir.resolve(classDirs[label]);
-            loadImagesInto(tDir, label, xTrainList, yTrainList, trainCounts);
-            loadImagesInto(vDir, label, xTestList, yTestList, testCounts);
+            dirs[2 * label] = trainDir.resolve(classDirs[label]);
+            dirs[2 * label + 1] = testDir.resolve(classDirs[label]);
         }
+        List<List<Path>> files = listImagesParallel(dirs);
+        for (int label = 0; label < classDirs.length; label++) {
+            loadImagesInto(files.get(2 * label), label, xTrainList, yTrainList, trainCounts, decoder, store);
+            loadImagesInto(files.get(2 * label + 1), label, xTestList, yTestList, testCounts, decoder, store);
+        }
+        closeFeatureStore(store, storePath);
 
         if (xTrainList.isEmpty()) return Optional.empty();
 
@@ -178,26 +737,107 @@ public class ConsumerTeam {
         return Optional.of(ds);
     }
 
-    static void loadImagesInto(Path dir, int label, List<double[]> X, List<Integer> Y, int[] counters) throws IOException {
-        if (!Files.isDirectory(dir)) return;
+    // decodifica em paralelo, mas adiciona na ordem do walk -> contadores e ordem iguais ao modo sequencial
+    static void loadImagesInto(List<Path> files, int label, List<double[]> X, List<Integer> Y, int[] counters,
+                               ImageDecoder decoder, FeatureStore store) {
+        for (double[] f : loadFeaturesParallel(files, decoder, store)) {
+            if (f == null) continue;
+            X.add(f);
+            Y.add(label);
+            counters[label]++;
+        }
+    }
+
+    private static ForkJoinPool ingestPool;
+
+    // pool de ingestão do dataset (TEAM_INGEST_THREADS, padrão = núcleos disponíveis)
+    static synchronized ForkJoinPool ingestPool() {
+        if (ingestPool == null) {
+            int threads = Integer.parseInt(System.getenv().getOrDefault("TEAM_INGEST_THREADS",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            ingestPool = new ForkJoinPool(Math.max(1, threads));
+        }
+        return ingestPool;
+    }
+
+    // walk + filtro de extensões; a ordem do walk é preservada (define o split após o shuffle)
+    static List<Path> listImages(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return Collections.emptyList();
         try (Stream<Path> st = Files.walk(dir)) {
-            for (Path p : st.filter(Files::isRegularFile)
+            return st.filter(Files::isRegularFile)
                     .filter(pp -> {
                         String n = pp.getFileName().toString().toLowerCase();
-                        return n.endsWith(".png") || n.endsWith(".jpg") || n.endsWith(".jpeg");
-                    }).collect(Collectors.toList())) {
-                try {
-                    BufferedImage img = ImageIO.read(p.toFile());
-                    if (img == null) continue;
-                    double[] f = extractFeatures(img);
-                    X.add(f);
-                    Y.add(label);
-                    counters[label]++;
-                } catch (Exception ignore) {}
-            }
+                        return n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".png");
+                    }).collect(Collectors.toList());
+        }
+    }
+
+    // lista vários diretórios em paralelo no pool de ingestão, devolvendo na ordem dos argumentos
+    static List<List<Path>> listImagesParallel(Path... dirs) {
+        List<ForkJoinTask<List<Path>>> tasks = new ArrayList<>(dirs.length);
+        for (Path dir : dirs) tasks.add(ingestPool().submit(() -> listImages(dir)));
+        List<List<Path>> out = new ArrayList<>(dirs.length);
+        for (ForkJoinTask<List<Path>> t : tasks) out.add(t.join());
+        return out;
+    }
+
+    // decode + extractFeatures em paralelo; resultado indexado como a entrada (null = ilegível)
+    static double[][] loadFeaturesParallel(List<Path> files, ImageDecoder decoder, FeatureStore store) {
+        double[][] feats = new double[files.size()][];
+        ingestPool().submit(() -> IntStream.range(0, files.size()).parallel().forEach(i -> {
+            try {
+                feats[i] = loadFeatures(files.get(i), decoder, store);
+            } catch (Exception ignore) {}
+        })).join();
+        return feats;
+    }
+
+    // a resolução do decode muda as features -> faz parte da versão do feature store
+    static int featureVersion(ImageDecoder decoder) {
+        return FEATURE_VERSION * 100_000 + Math.max(0, decoder.maxSide());
+    }
+
+    // null = sem feature store (path vazio)
+    static FeatureStore openFeatureStore(String path, ImageDecoder decoder) {
+        return path.isEmpty() ? null : FeatureStore.open(Paths.get(path), 4, featureVersion(decoder));
+    }
+
+    static void closeFeatureStore(FeatureStore store, String path) {
+        if (store == null) return;
+        try {
+            store.save();
+            System.out.println("Feature store " + path + ": reaproveitadas=" + store.hits() +
+                    " recalculadas=" + store.misses());
+        } catch (IOException e) {
+            System.out.println("Falha ao gravar feature store: " + e.getMessage());
         }
     }
 
+    // features de uma imagem do dataset; consulta o feature store (path+size+mtime) antes de decodificar
+    static double[] loadFeatures(Path p, ImageDecoder decoder, FeatureStore store) throws IOException {
+        BasicFileAttributes attrs = null;
+        if (store != null) {
+            attrs = Files.readAttributes(p, BasicFileAttributes.class);
+            double[] cached = store.lookup(p, attrs);
+            if (cached == FeatureStore.UNREADABLE) return null;
+            if (cached != null) return cached;
+        }
+        BufferedImage img;
+        try {
+            img = decoder.read(p);
+        } catch (IOException e) {
+            img = null;   // PNG/JPEG corrompido: ilegível como o formato desconhecido
+        }
+        if (img == null) {
+            // tombstone: não decodifica de novo no próximo início enquanto o arquivo não mudar
+            if (store != null) store.record(p, attrs, null);
+            return null;
+        }
+        double[] f = extractFeatures(img);
+        if (store != null) store.record(p, attrs, f);
+        return f;
+    }
+
     // generate synthetic team image (same colors as generator)
     static BufferedImage makeTeamImage(int team) {
         int w = 64, h = 64;
@@ -222,14 +862,60 @@ public class ConsumerTeam {
         return img;
     }
 
+    // Aceita os dois formatos: binário (PNG no corpo + headers) e JSON legado com base64
+    static MessagePayload readPayload(Delivery delivery) {
+        AMQP.BasicProperties props = delivery.getProperties();
+        if (props != null && CONTENT_TYPE_PNG.equals(props.getContentType())) {
+            Map<String, Object> headers = props.getHeaders() != null ? props.getHeaders() : Collections.emptyMap();
+            MessagePayload p = new MessagePayload();
+            p.id = headerOr(headers, "id", props.getMessageId());
+            p.type = headerOr(headers, "type", props.getType());
+            p.timestamp = headerOr(headers, "timestamp", null);
+            p.label = headerOr(headers, "label", null);
+            p.imageBytes = delivery.getBody();
+            return p;
+        }
+        MessagePayload p = gson.fromJson(new String(delivery.getBody(), StandardCharsets.UTF_8), MessagePayload.class);
+        if (p == null || p.image == null) throw new IllegalArgumentException("payload sem imagem");
+        p.imageBytes = Base64.getDecoder().decode(p.image);
+        p.image = null;
+        return p;
+    }
+
+    // headers chegam como LongString -> converte para String
+    private static String headerOr(Map<String, Object> headers, String key, String fallback) {
+        Object v = headers.get(key);
+        return v != null ? v.toString() : fallback;
+    }
+
     static BufferedImage decodeImage(String base64) throws Exception {
-        byte[] bytes = Base64.getDecoder().decode(base64);
+        return decodeImage(Base64.getDecoder().decode(base64));
+    }
+
+    static BufferedImage decodeImage(byte[] bytes) throws Exception {
         try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes)) {
-            return ImageIO.read(bais);
+            BufferedImage img = ImageIO.read(bais);
+            // formato desconhecido/corrompido: erro permanente (vai direto para a DLQ)
+            if (img == null) throw new IllegalArgumentException("imagem ilegível (" + bytes.length + " bytes)");
+            return img;
         }
     }
 
+    // caminho rápido: somas por linha lidas direto do raster; layouts não suportados usam getRGB
     static double[] extractFeatures(BufferedImage img) {
+        long[] rows = RasterPixels.rowChannelSums(img);
+        if (rows == null) return extractFeaturesGeneric(img);
+        int w = img.getWidth(), h = img.getHeight();
+        long sumR = 0, sumG = 0, sumB = 0;
+        for (int y = 0; y < h; y++) {
+            sumR += rows[3 * y];
+            sumG += rows[3 * y + 1];
+            sumB += rows[3 * y + 2];
+        }
+        return toFeatures(w, h, sumR, sumG, sumB);
+    }
+
+    static double[] extractFeaturesGeneric(BufferedImage img) {
         int w = img.getWidth(), h = img.getHeight();
         double sumR = 0, sumG = 0, sumB = 0;
         for (int y = 0; y < h; y++) {
@@ -243,6 +929,10 @@ public class ConsumerTeam {
                 sumB += b;
             }
         }
+        return toFeatures(w, h, sumR, sumG, sumB);
+    }
+
+    private static double[] toFeatures(int w, int h, double sumR, double sumG, double sumB) {
         double total = sumR + sumG + sumB + 1e-9;
         double redRatio = sumR / total;
         double greenRatio = sumG / total;
@@ -265,6 +955,8 @@ public class ConsumerTeam {
         String id;
         String type;
         String timestamp;
-        String image;
+        String image;                 // base64 (formato JSON legado)
+        transient byte[] imageBytes;  // bytes do PNG, preenchido por readPayload
+        String label;                 // só nas mensagens de feedback (face.label / team.label)
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.example.consumerteam;
+
+import com.example.consumercommon.ImageClassifier;
+import com.example.consumercommon.ModelSnapshot;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Adaptador do ConsumerTeam para o consumer-runtime: mesmo treino (TEAM_* / TEAM_DATASET_DIR), mesmas
+ * features e o mesmo modelo ativo. API pública do consumer para quem o hospeda (consumer-runtime).
+ */
+public final class TeamClassifier implements ImageClassifier {
+    @Override public String name() { return "team"; }
+    @Override public String queue() { return "queue_team"; }
+    @Override public String routingKey() { return "team"; }
+
+    @Override
+    public void train() {
+        ConsumerTeam.configureModel();
+        ConsumerTeam.trainModel(System.getenv().getOrDefault("TEAM_DATASET_DIR", "./archive"),
+                "1".equals(System.getenv().getOrDefault("TEAM_FORCE_SYNTHETIC", "0")));
+    }
+
+    @Override
+    public double[] extractFeatures(BufferedImage img) {
+        return ConsumerTeam.extractFeatures(img);
+    }
+
+    @Override
+    public ModelSnapshot activeModel() {
+        return ConsumerTeam.activeModel();
+    }
+}
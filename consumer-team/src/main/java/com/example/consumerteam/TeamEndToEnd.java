@@ -0,0 +1,59 @@
+package com.example.consumerteam;
+
+import com.example.consumercommon.DeliveryBatcher;
+import com.example.consumercommon.PredictionLog;
+import com.example.consumercommon.RetryHandler;
+import com.example.consumercommon.WorkerExecutors;
+import com.rabbitmq.client.Channel;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Entrada pública para o EndToEndBenchmark (módulo benchmarks): sobe o processamento do ConsumerTeam
+ * num Channel qualquer (o broker em memória), nos mesmos modos do main: sequencial, workers e micro-batch.
+ * Sem o atraso simulado, sem publicação de resultados; modelo sintético (treino rápido e sem dataset).
+ */
+public final class TeamEndToEnd {
+    private TeamEndToEnd() {}
+
+    public static synchronized void start(Channel channel, String mode, int parallelism) throws Exception {
+        ConsumerTeam.processingDelayMs = 0;
+        if (ConsumerTeam.activeModel() == null) ConsumerTeam.swapModel(ConsumerTeam.trainSynthetic());
+        if (ConsumerTeam.predictionLog == null) ConsumerTeam.predictionLog = PredictionLog.start("Team", 4096, 1, 100);
+
+        channel.exchangeDeclare("images", "topic", true);
+        channel.queueDeclare("queue_team", true, false, false, null);
+        channel.queueBind("queue_team", "images", "team");
+        ConsumerTeam.retries = new RetryHandler("images", "queue_team", "team", 3, 1000);
+        ConsumerTeam.retries.declare(channel);
+
+        switch (mode) {
+            case "batch": {
+                channel.basicQos(parallelism * 2);
+                DeliveryBatcher batcher = new DeliveryBatcher(parallelism, 50,
+                        batch -> ConsumerTeam.handleBatch(channel, batch));
+                batcher.start("e2e-team-batcher");
+                channel.basicConsume("queue_team", false, (tag, delivery) -> batcher.offer(delivery), tag -> {});
+                break;
+            }
+            case "workers": {
+                channel.basicQos(parallelism);
+                ExecutorService pool = WorkerExecutors.create("platform", parallelism, "e2e-team-worker");
+                channel.basicConsume("queue_team", false, (tag, delivery) -> pool.execute(() -> {
+                    try {
+                        ConsumerTeam.handleDelivery(channel, delivery);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }), tag -> {});
+                break;
+            }
+            default:
+                channel.basicConsume("queue_team", false,
+                        (tag, delivery) -> ConsumerTeam.handleDelivery(channel, delivery), tag -> {});
+        }
+    }
+
+    public static long processed() { return ConsumerTeam.metrics.processedCount(); }
+    public static long errors() { return ConsumerTeam.metrics.errorCount(); }
+}
@@ -0,0 +1,23 @@
+package com.example.consumerteam;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Estágios do caminho por mensagem do ConsumerTeam expostos um a um, para os benchmarks JMH
+ * (módulo benchmarks) medirem cada parte sem acesso aos membros package-private do consumer.
+ */
+public final class TeamStages {
+    private TeamStages() {}
+
+    public static BufferedImage decodeImage(byte[] png) throws Exception {
+        return ConsumerTeam.decodeImage(png);
+    }
+
+    public static double[] extractFeatures(BufferedImage img) {
+        return ConsumerTeam.extractFeatures(img);
+    }
+
+    public static double[] extractFeaturesGeneric(BufferedImage img) {
+        return ConsumerTeam.extractFeaturesGeneric(img);
+    }
+}
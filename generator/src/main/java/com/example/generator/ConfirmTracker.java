@@ -0,0 +1,238 @@
+package com.example.generator;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publisher confirms assíncronos (GEN_CONFIRMS=1) com janela limitada de mensagens em voo.
+ *
+ * Um tracker por channel e um publisher por channel: os seq numbers do broker são contíguos,
+ * então as pendentes ficam num anel indexado por seq (sem mapa ordenado nem boxing); ack/nack
+ * "multiple" limpa o intervalo [menor pendente, tag]. O publisher bloqueia quando a janela enche.
+ * Mensagens com nack são republicadas pela thread publicadora (o listener roda na thread de I/O
+ * do client, que não pode bloquear esperando a própria janela) até GEN_CONFIRM_RETRIES vezes.
+ *
+ * A espera pela janela é limitada: channel/conexão fechados acordam o publisher na hora (shutdown
+ * listener) e sem confirm nenhum por GEN_CONFIRM_TIMEOUT_MS o tracker desiste. Nos dois casos o
+ * publish lança IOException e o tracker fica quebrado (broken()); o publisher troca de channel com
+ * {@link #recycle}, que reenvia as pendentes pelo channel novo (pode duplicar, nunca perde).
+ */
+final class ConfirmTracker implements ConfirmListener {
+    private static final class Pending {
+        final String routingKey;
+        final AMQP.BasicProperties props;
+        final byte[] body;
+        int attempts;
+
+        Pending(String routingKey, AMQP.BasicProperties props, byte[] body) {
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+        }
+    }
+
+    private final Channel channel;
+    private final int window;
+    private final int maxRetries;
+    private final long timeoutMs;
+    private final Pending[] slots;
+    private final int mask;
+    private long low;    // menor seq possivelmente pendente
+    private long next;   // próximo seq a publicar
+    private final ConcurrentLinkedQueue<Pending> retries = new ConcurrentLinkedQueue<>();
+    private IOException broken;   // != null: channel fechado ou confirms parados; só resta o recycle
+
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    ConfirmTracker(Channel channel, int window, int maxRetries, long timeoutMs) throws IOException {
+        this.channel = channel;
+        this.window = Math.max(1, window);
+        this.maxRetries = maxRetries;
+        this.timeoutMs = Math.max(1, timeoutMs);
+        int size = Integer.highestOneBit(Math.max(1, this.window - 1)) << 1;
+        this.slots = new Pending[size];
+        this.mask = size - 1;
+        channel.confirmSelect();
+        this.low = this.next = channel.getNextPublishSeqNo();
+        channel.addConfirmListener(this);
+        // roda na thread de I/O do client: só marca e acorda quem espera a janela
+        channel.addShutdownListener(this::shutdown);
+    }
+
+    Channel channel() { return channel; }
+
+    synchronized boolean broken() { return broken != null; }
+
+    /**
+     * Channel novo na mesma conexão no lugar deste: as pendentes sem confirm e os retries passam
+     * para o tracker novo (reenviadas no próximo publish) e o channel antigo é abortado.
+     */
+    ConfirmTracker recycle(Connection conn) throws IOException {
+        Channel fresh = conn.createChannel();
+        fresh.exchangeDeclare(MessageGenerator.EXCHANGE, "topic", true);
+        ConfirmTracker t = new ConfirmTracker(fresh, window, maxRetries, timeoutMs);
+        synchronized (this) {
+            if (broken == null) broken = new IOException("channel substituído");
+            for (long s = low; s < next; s++) {
+                int i = (int) (s & mask);
+                if (slots[i] != null) t.retries.add(slots[i]);
+                slots[i] = null;
+            }
+            low = next;
+            notifyAll();
+        }
+        Pending p;
+        while ((p = retries.poll()) != null) t.retries.add(p);
+        try {
+            channel.abort();
+        } catch (RuntimeException ignore) {}
+        return t;
+    }
+
+    private synchronized void shutdown(ShutdownSignalException cause) {
+        if (broken == null) broken = new IOException("channel fechado com confirms pendentes", cause);
+        notifyAll();
+    }
+
+    void publish(String routingKey, AMQP.BasicProperties props, byte[] body) throws IOException, InterruptedException {
+        Pending p = new Pending(routingKey, props, body);
+        try {
+            drainRetries();
+        } catch (IOException e) {
+            retries.add(p);
+            throw e;
+        }
+        send(p);
+    }
+
+    private void send(Pending p) throws IOException, InterruptedException {
+        long seq;
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (broken == null && next - low >= window) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    broken = new IOException("janela de confirms cheia há " + timeoutMs + " ms (" + (next - low) + " pendentes)");
+                    break;
+                }
+                wait(left);
+            }
+            // o retry do recycle reenvia este também
+            if (broken != null) {
+                retries.add(p);
+                throw broken;
+            }
+            seq = next++;
+            // registra antes de publicar: o confirm pode chegar antes do basicPublish retornar
+            slots[(int) (seq & mask)] = p;
+        }
+        try {
+            channel.basicPublish(MessageGenerator.EXCHANGE, p.routingKey, p.props, p.body);
+        } catch (IOException e) {
+            synchronized (this) {
+                slots[(int) (seq & mask)] = null;
+                advance();
+            }
+            retries.add(p);
+            throw e;
+        }
+    }
+
+    private void drainRetries() throws IOException, InterruptedException {
+        Pending p;
+        while ((p = retries.poll()) != null) {
+            if (++p.attempts > maxRetries) {
+                failed.increment();
+                continue;
+            }
+            retried.increment();
+            send(p);
+        }
+    }
+
+    /** Espera todas as pendentes (inclusive retries) serem confirmadas; false se estourar o timeout. */
+    boolean awaitAll(long timeoutMs) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            // quebrado: não há mais o que esperar neste channel (as pendentes vão com o recycle)
+            synchronized (this) {
+                if (broken != null) return low == next && retries.isEmpty();
+            }
+            drainRetries();
+            synchronized (this) {
+                if (low == next && retries.isEmpty()) return true;
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                wait(Math.min(left, 100));
+            }
+        }
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        complete(deliveryTag, multiple, null);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        List<Pending> nacks = new ArrayList<>();
+        complete(deliveryTag, multiple, nacks);
+        nacked.add(nacks.size());
+        retries.addAll(nacks);
+    }
+
+    // nacks == null -> ack (conta como confirmada); senão coleta as mensagens para retry
+    private synchronized void complete(long tag, boolean multiple, List<Pending> nacks) {
+        long from = multiple ? low : tag;
+        for (long s = from; s <= tag; s++) {
+            int i = (int) (s & mask);
+            Pending p = slots[i];
+            if (p == null) continue;
+            slots[i] = null;
+            if (nacks == null) confirmed.increment();
+            else nacks.add(p);
+        }
+        advance();
+        notifyAll();
+    }
+
+    private void advance() {
+        while (low < next && slots[(int) (low & mask)] == null) low++;
+    }
+
+    synchronized int inFlight() { return (int) (next - low); }
+    long confirmed() { return confirmed.sum(); }
+    long nacked() { return nacked.sum(); }
+    long retried() { return retried.sum(); }
+    long failed() { return failed.sum(); }
+
+    static long confirmed(List<ConfirmTracker> trackers) {
+        long total = 0;
+        for (ConfirmTracker t : trackers) total += t.confirmed();
+        return total;
+    }
+
+    static String summary(List<ConfirmTracker> trackers) {
+        long nacked = 0, retried = 0, failed = 0, inFlight = 0;
+        for (ConfirmTracker t : trackers) {
+            nacked += t.nacked();
+            retried += t.retried();
+            failed += t.failed();
+            inFlight += t.inFlight();
+        }
+        return "confirmed=" + confirmed(trackers) + " nacked=" + nacked + " retried=" + retried +
+                " failed=" + failed + " inflight=" + inFlight;
+    }
+}
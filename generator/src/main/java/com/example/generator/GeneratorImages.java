@@ -0,0 +1,36 @@
+package com.example.generator;
+
+import com.rabbitmq.client.Channel;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/** Acesso público às imagens e à publicação do gerador para os benchmarks (módulo benchmarks). */
+public final class GeneratorImages {
+    private GeneratorImages() {}
+
+    public static byte[] facePng(boolean happy) throws Exception {
+        return MessageGenerator.renderFaceImage(happy);
+    }
+
+    public static byte[] teamPng(int team) throws Exception {
+        return MessageGenerator.renderTeamImage(team);
+    }
+
+    /** Só o encode PNG de uma imagem já renderizada. */
+    public static byte[] toPng(BufferedImage img) throws Exception {
+        return MessageGenerator.toPNGBytes(img);
+    }
+
+    /** Liga o pool de payloads pré-renderizados do gerador (GEN_RENDER_THREADS/GEN_PAYLOAD_POOL/GEN_PERTURB). */
+    public static void startPayloadPool(int threads, int capacity, boolean perturb, boolean binary) {
+        PayloadPool previous = MessageGenerator.payloads;
+        if (previous != null) previous.stop();
+        MessageGenerator.payloads = threads > 0 ? PayloadPool.start(threads, capacity, perturb, !binary) : null;
+    }
+
+    /** Mesmo caminho do modo fixo do gerador: renderiza, monta o payload (JSON ou binário) e publica. */
+    public static String publish(Channel channel, boolean isFace, Random r, boolean binary) throws Exception {
+        return MessageGenerator.publishImage(channel, isFace, r, binary);
+    }
+}
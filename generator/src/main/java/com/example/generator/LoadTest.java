@@ -0,0 +1,170 @@
+package com.example.generator;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Modo de teste de carga do gerador (GEN_MODE=load), para achar o ponto de saturação dos consumers.
+ *
+ * Variáveis:
+ *  - GEN_RATE: taxa alvo em msg/s (0 = o mais rápido possível)
+ *  - GEN_PROFILE: constant | ramp | burst
+ *      ramp : sobe linearmente de 0 até GEN_RATE em GEN_RAMP_SECONDS e depois mantém
+ *      burst: GEN_BURST_ON_MS publicando a GEN_RATE, GEN_BURST_OFF_MS parado
+ *  - GEN_FACE_RATIO: fração de mensagens face (0..1, padrão 0.5)
+ *  - GEN_PUBLISHERS: threads publicadoras, cada uma com seu channel
+ *  - GEN_DURATION_SECONDS: duração do teste (0 = sem fim)
+ * A taxa alcançada é impressa a cada segundo; com GEN_CONFIRMS=1 também a taxa de publicações confirmadas,
+ * e com o pool de render ligado (GEN_RENDER_THREADS) quantos payloads estão prontos/foram reaproveitados.
+ */
+final class LoadTest {
+    private final double rate;
+    private final String profile;
+    private final long rampMs, burstOnMs, burstOffMs, durationMs;
+    private final double faceRatio;
+    private final int publishers;
+    private final boolean binary;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final List<ConfirmTracker> trackers = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    LoadTest(double rate, String profile, long rampMs, long burstOnMs, long burstOffMs,
+             double faceRatio, int publishers, long durationMs, boolean binary) {
+        this.rate = rate; this.profile = profile; this.rampMs = rampMs;
+        this.burstOnMs = burstOnMs; this.burstOffMs = burstOffMs;
+        this.faceRatio = faceRatio; this.publishers = publishers;
+        this.durationMs = durationMs; this.binary = binary;
+    }
+
+    static LoadTest fromEnv(boolean binary) {
+        Map<String, String> env = System.getenv();
+        return new LoadTest(
+                Double.parseDouble(env.getOrDefault("GEN_RATE", "0")),
+                env.getOrDefault("GEN_PROFILE", "constant").toLowerCase(),
+                (long) (Double.parseDouble(env.getOrDefault("GEN_RAMP_SECONDS", "30")) * 1000),
+                Long.parseLong(env.getOrDefault("GEN_BURST_ON_MS", "1000")),
+                Long.parseLong(env.getOrDefault("GEN_BURST_OFF_MS", "4000")),
+                Double.parseDouble(env.getOrDefault("GEN_FACE_RATIO", "0.5")),
+                Math.max(1, Integer.parseInt(env.getOrDefault("GEN_PUBLISHERS", "1"))),
+                (long) (Double.parseDouble(env.getOrDefault("GEN_DURATION_SECONDS", "0")) * 1000),
+                binary);
+    }
+
+    // taxa alvo no instante t (ms desde o início): infinito = sem limite, 0 = pausa
+    double targetRate(long elapsedMs) {
+        double base = rate <= 0 ? Double.POSITIVE_INFINITY : rate;
+        switch (profile) {
+            case "ramp":
+                if (rate <= 0 || elapsedMs >= rampMs) return base;
+                return Math.max(1.0, base * elapsedMs / (double) rampMs);
+            case "burst":
+                return (elapsedMs % (burstOnMs + burstOffMs)) < burstOnMs ? base : 0.0;
+            default:
+                return base;
+        }
+    }
+
+    void run(Connection conn) throws Exception {
+        System.out.println("Load test: rate=" + (rate <= 0 ? "max" : rate + " msg/s") + " profile=" + profile +
+                " faceRatio=" + faceRatio + " publishers=" + publishers +
+                (durationMs > 0 ? " duration=" + durationMs / 1000.0 + "s" : ""));
+        long start = System.nanoTime();
+
+        List<Thread> threads = new ArrayList<>(publishers);
+        for (int i = 0; i < publishers; i++) {
+            Channel channel = conn.createChannel();
+            channel.exchangeDeclare(MessageGenerator.EXCHANGE, "topic", true);
+            ConfirmTracker tracker = MessageGenerator.confirmsFor(channel);
+            if (tracker != null) trackers.add(tracker);
+            Thread t = new Thread(() -> publishLoop(conn, channel, tracker, start), "load-publisher-" + i);
+            threads.add(t);
+        }
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long[] last = {0, start, 0};
+        reporter.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long total = published.sum();
+            double secs = (now - last[1]) / 1e9;
+            double achieved = (total - last[0]) / secs;
+            double target = targetRate((now - start) / 1_000_000);
+            String confirms = "";
+            if (!trackers.isEmpty()) {
+                long confirmed = ConfirmTracker.confirmed(trackers);
+                confirms = String.format(" confirmed=%.1f msg/s %s", (confirmed - last[2]) / secs, ConfirmTracker.summary(trackers));
+                last[2] = confirmed;
+            }
+            PayloadPool pool = MessageGenerator.payloads;
+            System.out.println(String.format("[Load] t=%.0fs target=%s achieved=%.1f msg/s total=%d errors=%d%s%s",
+                    (now - start) / 1e9, Double.isInfinite(target) ? "max" : String.format("%.1f", target),
+                    achieved, total, errors.sum(), confirms, pool != null ? " " + pool.summary() : ""));
+            last[0] = total;
+            last[1] = now;
+        }, 1, 1, TimeUnit.SECONDS);
+
+        threads.forEach(Thread::start);
+        if (durationMs > 0) {
+            Thread.sleep(durationMs);
+            running = false;
+            for (Thread t : threads) t.join();
+            reporter.shutdownNow();
+            if (!trackers.isEmpty()) {
+                boolean done = true;
+                for (ConfirmTracker t : trackers) done &= t.awaitAll(30_000);
+                System.out.println("Confirms: " + ConfirmTracker.summary(trackers) + (done ? "" : " (timeout esperando confirms)"));
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Load test finished: total=%d errors=%d avg=%.1f msg/s",
+                    published.sum(), errors.sum(), published.sum() / secs));
+            conn.close();
+        }
+    }
+
+    private void publishLoop(Connection conn, Channel channel, ConfirmTracker tracker, long start) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        long next = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            double target = targetRate((now - start) / 1_000_000);
+            if (target == 0.0) {
+                // fase parada do burst
+                LockSupport.parkNanos(1_000_000);
+                next = System.nanoTime();
+                continue;
+            }
+            if (!Double.isInfinite(target)) {
+                // cada publisher cuida de 1/N da taxa
+                long interval = (long) (1e9 * publishers / target);
+                next += interval;
+                // atrasado mais de 1s (ex.: broker lento): não tenta compensar tudo de uma vez
+                if (now - next > 1_000_000_000L) next = now;
+                long wait = next - now;
+                if (wait > 0) LockSupport.parkNanos(wait);
+            }
+            try {
+                MessageGenerator.publishImage(channel, tracker, r.nextDouble() < faceRatio, r, binary);
+                published.increment();
+            } catch (Exception ex) {
+                errors.increment();
+                if (errors.sum() <= 10) ex.printStackTrace();
+                // o antigo fica na lista: os contadores dele continuam no resumo
+                ConfirmTracker fresh = MessageGenerator.recycleIfBroken(conn, tracker);
+                if (fresh != tracker) trackers.add(fresh);
+                tracker = fresh;
+            }
+        }
+    }
+}
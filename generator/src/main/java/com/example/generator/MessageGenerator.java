@@ -1,17 +1,25 @@
 package com.example.generator;
 
 import com.google.gson.Gson;
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 
 import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.*;
 import java.awt.geom.Arc2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.Executors;
@@ -21,16 +29,64 @@ import java.util.concurrent.TimeUnit;
 /**
  * Gera mensagens (images) e publica no exchange "images" com routing keys "face" e "team".
  * Taxa: ~5 msg/s (200ms).
+ *
+ * Formato do payload (GEN_PAYLOAD_FORMAT):
+ *  - json   (padrão): JSON {id,type,timestamp,image(base64)}
+ *  - binary: PNG cru no corpo, id/type/timestamp nos headers AMQP (content-type image/png)
+ *
+ * GEN_MODE=load ativa o modo de teste de carga (ver {@link LoadTest}).
+ * GEN_RECORD_FILE grava tudo o que é publicado num {@link WorkloadLog};
+ * GEN_MODE=replay republica um log gravado (ver {@link Replay}).
+ * GEN_CONFIRMS=1 ativa publisher confirms assíncronos em todos os modos (ver {@link ConfirmTracker}).
+ * GEN_FEEDBACK_RATIO republica essa fração das imagens de face com o rótulo verdadeiro em face.label
+ * (fila de feedback do aprendizado online dos consumers). Só face: as imagens de time geradas aqui são
+ * cores sintéticas (RED/BLUE/GREEN/COR) sem correspondência com as classes do dataset do consumer-team
+ * (CORINTHIANS/FLAMENGO/PALMEIRAS), que as rejeitaria; feedback de time vem de fora, com rótulos do dataset.
+ * GEN_RENDER_THREADS (padrão 0 = render na thread que publica; metade dos núcleos com GEN_MODE=load)
+ * threads pré-renderizam até GEN_PAYLOAD_POOL imagens por tipo, com variações de cor/posição se
+ * GEN_PERTURB=1 (ver {@link PayloadPool}).
+ * GEN_SHARDS=N (>1) particiona cada tipo em N filas pelo hash do id: routing key face.shard.i /
+ * team.shard.i, filas queue_face.i / queue_team.i (declaradas aqui também, para não perder mensagens
+ * publicadas antes dos consumers subirem). Consumers com FACE_SHARDS/TEAM_SHARDS = N dividem as filas.
  */
 public class MessageGenerator {
-    private static final String EXCHANGE = "images";
+    static final String EXCHANGE = "images";
     private static final Gson gson = new Gson();
     private static final Random rnd = new Random();
+    static final String CONTENT_TYPE_PNG = "image/png";
+    // gravação opcional das mensagens publicadas (GEN_RECORD_FILE)
+    static volatile WorkloadLog.Writer recorder;
+    // publisher confirms (GEN_CONFIRMS, GEN_CONFIRM_WINDOW, GEN_CONFIRM_RETRIES, GEN_CONFIRM_TIMEOUT_MS)
+    static boolean confirms;
+    static int confirmWindow, confirmRetries;
+    static long confirmTimeoutMs;
+    static double feedbackRatio;
+    static int shards;
+    // imagens pré-renderizadas por threads próprias (GEN_RENDER_THREADS > 0; null = render na thread que publica)
+    static volatile PayloadPool payloads;
 
     public static void main(String[] args) throws Exception {
         String host = System.getenv().getOrDefault("RABBITMQ_HOST", "localhost");
         String user = System.getenv().getOrDefault("RABBITMQ_USER", "guest");
         String pass = System.getenv().getOrDefault("RABBITMQ_PASS", "guest");
+        boolean binary = "binary".equalsIgnoreCase(System.getenv().getOrDefault("GEN_PAYLOAD_FORMAT", "json"));
+        confirms = "1".equals(System.getenv().getOrDefault("GEN_CONFIRMS", "0"));
+        confirmWindow = Integer.parseInt(System.getenv().getOrDefault("GEN_CONFIRM_WINDOW", "1024"));
+        confirmRetries = Integer.parseInt(System.getenv().getOrDefault("GEN_CONFIRM_RETRIES", "5"));
+        confirmTimeoutMs = Long.parseLong(System.getenv().getOrDefault("GEN_CONFIRM_TIMEOUT_MS", "30000"));
+        feedbackRatio = Double.parseDouble(System.getenv().getOrDefault("GEN_FEEDBACK_RATIO", "0"));
+        shards = Integer.parseInt(System.getenv().getOrDefault("GEN_SHARDS", "0"));
+        String mode = System.getenv().getOrDefault("GEN_MODE", "fixed");
+        // pool de render só quando pedido ou no teste de carga, onde o render inline limita a taxa
+        int defaultRender = "load".equalsIgnoreCase(mode) ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2) : 0;
+        int renderThreads = Integer.parseInt(System.getenv().getOrDefault("GEN_RENDER_THREADS", String.valueOf(defaultRender)));
+        if (renderThreads > 0) {
+            int poolSize = Integer.parseInt(System.getenv().getOrDefault("GEN_PAYLOAD_POOL", "512"));
+            boolean perturb = "1".equals(System.getenv().getOrDefault("GEN_PERTURB", "0"));
+            payloads = PayloadPool.start(renderThreads, poolSize, perturb, !binary);
+            System.out.println("Render em " + renderThreads + " threads, " + poolSize + " payloads prontos por tipo" +
+                    (perturb ? " (com variações)" : ""));
+        }
 
         ConnectionFactory factory = new ConnectionFactory();
         factory.setHost(host);
@@ -38,8 +94,28 @@ public class MessageGenerator {
         factory.setPassword(pass);
 
         Connection conn = factory.newConnection();
+        if (shards > 1) declareShards(conn);
+
+        if ("replay".equalsIgnoreCase(mode)) {
+            Replay.run(conn, Paths.get(System.getenv().getOrDefault("GEN_REPLAY_FILE", "workload.wkl")),
+                    System.getenv().getOrDefault("GEN_REPLAY_SPEED", "original"),
+                    Integer.parseInt(System.getenv().getOrDefault("GEN_REPLAY_LOOPS", "1")));
+            return;
+        }
+
+        String recordFile = System.getenv().getOrDefault("GEN_RECORD_FILE", "");
+        if (!recordFile.isEmpty()) startRecording(recordFile);
+
+        // modo de carga (GEN_MODE=load): taxa/perfil/proporção/publishers configuráveis
+        if ("load".equalsIgnoreCase(mode)) {
+            LoadTest.fromEnv(binary).run(conn);
+            return;
+        }
+
         Channel channel = conn.createChannel();
         channel.exchangeDeclare(EXCHANGE, "topic", true);
+        // trocado por recycleIfBroken quando o channel cai; o scheduler é single-thread
+        ConfirmTracker[] tracker = {confirmsFor(channel)};
 
         ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
@@ -47,59 +123,193 @@ public class MessageGenerator {
         scheduler.scheduleAtFixedRate(() -> {
             try {
                 boolean isFace = rnd.nextBoolean();
-                String routingKey = isFace ? "face" : "team";
-
-                byte[] imageBytes;
-                if (isFace) {
-                    // gera face (aleatoriamente happy/sad)
-                    boolean happy = rnd.nextBoolean();
-                    imageBytes = renderFaceImage(happy);
-                } else {
-                    // agora 4 opções: 0=RED,1=BLUE,2=GREEN,3=COR
-                    int team = rnd.nextInt(4);
-                    imageBytes = renderTeamImage(team);
-                }
-
-                String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-
-                MessagePayload p = new MessagePayload(UUID.randomUUID().toString(), routingKey, Instant.now().toString(), base64Image);
-                String json = gson.toJson(p);
-
-                channel.basicPublish(EXCHANGE, routingKey, null, json.getBytes());
-                System.out.println("Published -> key: " + routingKey + " id: " + p.id);
+                String id = publishImage(channel, tracker[0], isFace, rnd, binary);
+                System.out.println("Published -> key: " + shardKey(isFace ? "face" : "team", id) + " id: " + id);
             } catch (Exception ex) {
                 ex.printStackTrace();
+                tracker[0] = recycleIfBroken(conn, tracker[0]);
             }
         }, 0, 200, TimeUnit.MILLISECONDS);
+        if (tracker[0] != null) {
+            scheduler.scheduleAtFixedRate(() -> System.out.println("[Confirms] " +
+                    ConfirmTracker.summary(Collections.singletonList(tracker[0]))), 10, 10, TimeUnit.SECONDS);
+        }
+    }
+
+    // tracker de confirms do channel, ou null quando GEN_CONFIRMS está desligado
+    static ConfirmTracker confirmsFor(Channel channel) throws IOException {
+        return confirms ? new ConfirmTracker(channel, confirmWindow, confirmRetries, confirmTimeoutMs) : null;
+    }
+
+    // tracker quebrado (channel fechado ou confirms parados) -> channel novo com as pendentes; se a
+    // conexão ainda não voltou, fica o mesmo e o próximo publish com erro tenta de novo
+    static ConfirmTracker recycleIfBroken(Connection conn, ConfirmTracker tracker) {
+        if (tracker == null || !tracker.broken()) return tracker;
+        try {
+            ConfirmTracker fresh = tracker.recycle(conn);
+            System.out.println("[Confirms] channel " + tracker.channel().getChannelNumber() + " trocado por " +
+                    fresh.channel().getChannelNumber());
+            return fresh;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[Confirms] channel novo falhou: " + e);
+            return tracker;
+        }
+    }
+
+    static String publishImage(Channel channel, boolean isFace, Random r, boolean binary) throws Exception {
+        return publishImage(channel, null, isFace, r, binary);
+    }
+
+    // imagem (face happy/sad ou team 0..3) do pool pré-renderizado ou renderizada aqui, publicada no
+    // formato configurado; devolve o id
+    static String publishImage(Channel channel, ConfirmTracker tracker, boolean isFace, Random r, boolean binary) throws Exception {
+        String routingKey = isFace ? "face" : "team";
+
+        PayloadPool pool = payloads;
+        PayloadPool.Payload rendered = pool != null ? pool.take(isFace, r) : PayloadPool.render(isFace, r, false, !binary);
+        byte[] imageBytes = rendered.png;
+        String label = rendered.label;
+
+        String id = UUID.randomUUID().toString();
+        String timestamp = Instant.now().toString();
+        String publishKey = shardKey(routingKey, id);
+        if (binary) {
+            // PNG vai direto no corpo, sem base64/JSON
+            publish(channel, tracker, publishKey, binaryProps(id, routingKey, timestamp), imageBytes);
+            record(publishKey, true, id, imageBytes);
+        } else {
+            byte[] json = jsonBody(id, routingKey, timestamp, rendered.imageJson).getBytes(StandardCharsets.UTF_8);
+            publish(channel, tracker, publishKey, null, json);
+            record(publishKey, false, id, json);
+        }
+        if (isFace && feedbackRatio > 0 && r.nextDouble() < feedbackRatio) {
+            publishFeedback(channel, tracker, routingKey + ".label", id, routingKey, timestamp, imageBytes, label, binary);
+        }
+        return id;
+    }
+
+    // mesmo JSON do gson.toJson(MessagePayload), com o campo image já codificado no render
+    static String jsonBody(String id, String type, String timestamp, String imageJson) {
+        return new StringBuilder(imageJson.length() + 128)
+                .append("{\"id\":").append(gson.toJson(id))
+                .append(",\"type\":").append(gson.toJson(type))
+                .append(",\"timestamp\":").append(gson.toJson(timestamp))
+                .append(",\"image\":").append(imageJson).append('}').toString();
+    }
+
+    // partição pelo hash do id (estável: o mesmo id sempre cai no mesmo shard)
+    static String shardKey(String type, String id) {
+        if (shards <= 1) return type;
+        return type + ".shard." + Math.floorMod(id.hashCode(), shards);
+    }
+
+    static void declareShards(Connection conn) throws Exception {
+        Channel ch = conn.createChannel();
+        ch.exchangeDeclare(EXCHANGE, "topic", true);
+        for (String type : new String[] {"face", "team"}) {
+            for (int s = 0; s < shards; s++) {
+                String queue = "queue_" + type + "." + s;
+                ch.queueDeclare(queue, true, false, false, null);
+                ch.queueBind(queue, EXCHANGE, type + ".shard." + s);
+            }
+        }
+        ch.close();
+        System.out.println("Sharded: " + shards + " filas por tipo (routing key <tipo>.shard.i)");
+    }
+
+    // mesma imagem com o rótulo verdadeiro (header "label" no binário, campo "label" no JSON)
+    static void publishFeedback(Channel channel, ConfirmTracker tracker, String routingKey, String id, String type,
+                                String timestamp, byte[] imageBytes, String label, boolean binary) throws Exception {
+        if (binary) {
+            AMQP.BasicProperties props = binaryProps(id, type, timestamp);
+            props.getHeaders().put("label", label);
+            publish(channel, tracker, routingKey, props, imageBytes);
+        } else {
+            MessagePayload p = new MessagePayload(id, type, timestamp, Base64.getEncoder().encodeToString(imageBytes));
+            p.label = label;
+            publish(channel, tracker, routingKey, null, gson.toJson(p).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static void publish(Channel channel, ConfirmTracker tracker, String routingKey,
+                        AMQP.BasicProperties props, byte[] body) throws IOException, InterruptedException {
+        if (tracker != null) tracker.publish(routingKey, props, body);
+        else channel.basicPublish(EXCHANGE, routingKey, props, body);
+    }
+
+    static void startRecording(String file) throws Exception {
+        WorkloadLog.Writer w = WorkloadLog.Writer.open(Paths.get(file));
+        recorder = w;
+        // flush periódico + fechamento no shutdown para não perder o final da gravação
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "workload-recorder-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleAtFixedRate(() -> {
+            try { w.flush(); } catch (Exception ignore) {}
+        }, 1, 1, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                w.close();
+                System.out.println("Gravação encerrada: " + w.records() + " mensagens em " + file);
+            } catch (Exception ignore) {}
+        }));
+        System.out.println("Gravando mensagens publicadas em " + file);
+    }
+
+    private static void record(String routingKey, boolean binary, String id, byte[] body) throws Exception {
+        WorkloadLog.Writer w = recorder;
+        if (w != null) w.append(routingKey, binary, id, body);
+    }
+
+    // metadados do modo binário: headers id/type/timestamp + content-type image/png
+    static AMQP.BasicProperties binaryProps(String id, String type, String timestamp) {
+        Map<String, Object> headers = new HashMap<>(4);
+        headers.put("id", id);
+        headers.put("type", type);
+        headers.put("timestamp", timestamp);
+        return new AMQP.BasicProperties.Builder()
+                .contentType(CONTENT_TYPE_PNG)
+                .messageId(id)
+                .type(type)
+                .headers(headers)
+                .build();
     }
 
     static byte[] renderFaceImage(boolean happy) throws Exception {
+        return renderFaceImage(happy, null);
+    }
+
+    // jitter != null: pequenas variações de cor (±12) e posição (±2px) que não mudam a classe
+    static byte[] renderFaceImage(boolean happy, Random jitter) throws Exception {
         int w = 64, h = 64;
+        int dx = offset(jitter), dy = offset(jitter);
         BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = img.createGraphics();
         // background: happy -> yellow bright, sad -> dark gray
         if (happy) {
-            g.setColor(new Color(255, 220, 80));
+            g.setColor(shade(new Color(255, 220, 80), jitter));
         } else {
-            g.setColor(new Color(80, 80, 90));
+            g.setColor(shade(new Color(80, 80, 90), jitter));
         }
         g.fillRect(0, 0, w, h);
 
         // draw a simple face circle
-        g.setColor(new Color(255, 230, 150));
-        g.fillOval(6, 6, 52, 52);
+        g.setColor(shade(new Color(255, 230, 150), jitter));
+        g.fillOval(6 + dx, 6 + dy, 52, 52);
 
         // eyes
         g.setColor(Color.BLACK);
-        g.fillOval(20, 24, 6, 6);
-        g.fillOval(38, 24, 6, 6);
+        g.fillOval(20 + dx, 24 + dy, 6, 6);
+        g.fillOval(38 + dx, 24 + dy, 6, 6);
 
         // mouth: arc (smile or frown)
         g.setStroke(new BasicStroke(3));
         if (happy) {
-            g.drawArc(20, 30, 24, 16, 180, 180); // smile
+            g.drawArc(20 + dx, 30 + dy, 24, 16, 180, 180); // smile
         } else {
-            g.drawArc(20, 36, 24, 16, 0, 180); // sad
+            g.drawArc(20 + dx, 36 + dy, 24, 16, 0, 180); // sad
         }
 
         g.dispose();
@@ -107,7 +317,12 @@ public class MessageGenerator {
     }
 
     static byte[] renderTeamImage(int team) throws Exception {
+        return renderTeamImage(team, null);
+    }
+
+    static byte[] renderTeamImage(int team, Random jitter) throws Exception {
         int w = 64, h = 64;
+        int dx = offset(jitter), dy = offset(jitter);
         BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = img.createGraphics();
 
@@ -122,7 +337,7 @@ public class MessageGenerator {
             case 2: c = Color.GREEN; label = "GREEN"; break;
             case 3:
                 // COR: fundo totalmente preto ou totalmente branco (simples)
-                boolean black = rnd.nextBoolean();
+                boolean black = (jitter != null ? jitter : rnd).nextBoolean();
                 g.setColor(black ? Color.BLACK : Color.WHITE);
                 g.fillRect(8, 8, w - 16, h - 16);
                 label = "COR";
@@ -135,11 +350,11 @@ public class MessageGenerator {
                 c = Color.GRAY; label = "UNK"; break;
         }
 
-        g.setColor(c);
+        g.setColor(shade(c, jitter));
         g.fillRect(8, 8, w-16, h-16);
 
-        g.setColor(Color.YELLOW);
-        g.fillOval(22, 18, 20, 20);
+        g.setColor(shade(Color.YELLOW, jitter));
+        g.fillOval(22 + dx, 18 + dy, 20, 20);
 
         g.setColor(Color.BLACK);
         g.setFont(new Font("Arial", Font.BOLD, 10));
@@ -149,11 +364,27 @@ public class MessageGenerator {
         return toPNGBytes(img);
     }
 
+    private static int offset(Random jitter) {
+        return jitter != null ? jitter.nextInt(5) - 2 : 0;
+    }
+
+    private static Color shade(Color c, Random jitter) {
+        if (jitter == null) return c;
+        return new Color(clamp(c.getRed() + jitter.nextInt(25) - 12), clamp(c.getGreen() + jitter.nextInt(25) - 12),
+                clamp(c.getBlue() + jitter.nextInt(25) - 12));
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+
     static byte[] toPNGBytes(BufferedImage img) throws Exception {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            ImageIO.write(img, "png", baos);
-            return baos.toByteArray();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(2048);
+        // cache em memória: ImageIO.write num OutputStream passaria por um arquivo temporário por imagem
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(baos)) {
+            ImageIO.write(img, "png", out);
         }
+        return baos.toByteArray();
     }
 
     static class MessagePayload {
@@ -161,6 +392,7 @@ public class MessageGenerator {
         String type;
         String timestamp;
         String image; // base64
+        String label; // só no feedback (omitido pelo gson quando null)
 
         MessagePayload(String id, String type, String timestamp, String image) {
             this.id = id;
@@ -0,0 +1,191 @@
+package com.example.generator;
+
+import com.google.gson.Gson;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Produção das imagens separada da publicação. Threads de render (Java2D + PNG + Base64, tudo o que
+ * não depende do id/timestamp da mensagem) enchem um ring por tipo (face, team); as threads que
+ * publicam só retiram um payload pronto e montam a mensagem.
+ *
+ * Ring: fila limitada MPMC sem lock (sequência por slot, como o do log de predições dos consumers,
+ * com CAS também na retirada porque há vários publishers). Cheio = os renders dormem; vazio = o
+ * publisher não espera: reaproveita um dos últimos payloads retirados (reused) e, só antes do
+ * primeiro render, renderiza ele mesmo (inline). A taxa de publicação deixa de depender do render.
+ *
+ * Com perturb=true cada variante sai com pequenas variações de cor/posição (mesma classe),
+ * então as mensagens não são cópias byte a byte umas das outras.
+ */
+final class PayloadPool {
+    private static final Gson gson = new Gson();
+    private static final String[] TEAM_LABELS = {"RED", "BLUE", "GREEN", "COR"};
+    private static final int RECENT = 64;
+
+    /** Imagem pronta: PNG e, para o formato JSON, o campo image já em base64 escapado pelo Gson. */
+    static final class Payload {
+        final boolean face;
+        final String label;
+        final byte[] png;
+        final String imageJson;
+
+        Payload(boolean face, String label, byte[] png, String imageJson) {
+            this.face = face;
+            this.label = label;
+            this.png = png;
+            this.imageJson = imageJson;
+        }
+    }
+
+    private static final class Ring {
+        final int mask;
+        final AtomicLongArray sequence;
+        final AtomicReferenceArray<Payload> slots;
+        final AtomicLong tail = new AtomicLong(), head = new AtomicLong();
+        final AtomicReferenceArray<Payload> recent = new AtomicReferenceArray<>(RECENT);
+
+        Ring(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            mask = size - 1;
+            sequence = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) sequence.set(i, i);
+            slots = new AtomicReferenceArray<>(size);
+        }
+
+        long size() {
+            return tail.get() - head.get();
+        }
+
+        boolean offer(Payload p) {
+            while (true) {
+                long pos = tail.get();
+                int slot = (int) pos & mask;
+                long diff = sequence.get(slot) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        slots.lazySet(slot, p);
+                        sequence.set(slot, pos + 1);   // publica para os publishers
+                        return true;
+                    }
+                } else if (diff < 0) {
+                    return false;   // cheio
+                }
+            }
+        }
+
+        Payload poll() {
+            while (true) {
+                long pos = head.get();
+                int slot = (int) pos & mask;
+                long diff = sequence.get(slot) - (pos + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(pos, pos + 1)) {
+                        Payload p = slots.get(slot);
+                        slots.lazySet(slot, null);
+                        sequence.set(slot, pos + mask + 1);   // devolve o slot aos renders
+                        return p;
+                    }
+                } else if (diff < 0) {
+                    return null;   // vazio
+                }
+            }
+        }
+    }
+
+    private final Ring faces, teams;
+    private final boolean perturb, json;
+    private final LongAdder rendered = new LongAdder(), taken = new LongAdder(), reused = new LongAdder(),
+            inline = new LongAdder();
+    private volatile boolean running = true;
+
+    private PayloadPool(int capacity, boolean perturb, boolean json) {
+        this.faces = new Ring(capacity);
+        this.teams = new Ring(capacity);
+        this.perturb = perturb;
+        this.json = json;
+    }
+
+    /** capacity = payloads prontos por tipo; json = pré-codifica também o base64 do formato JSON. */
+    static PayloadPool start(int threads, int capacity, boolean perturb, boolean json) {
+        PayloadPool pool = new PayloadPool(capacity, perturb, json);
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(pool::renderLoop, "payload-render-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        return pool;
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    /** Payload pronto do tipo pedido; nunca bloqueia. */
+    Payload take(boolean face, Random r) throws Exception {
+        Ring ring = face ? faces : teams;
+        Payload p = ring.poll();
+        if (p != null) {
+            ring.recent.lazySet(r.nextInt(RECENT), p);
+            taken.increment();
+            return p;
+        }
+        p = ring.recent.get(r.nextInt(RECENT));
+        if (p == null) {
+            // o slot sorteado ainda vazio: procura qualquer um antes de renderizar aqui
+            for (int i = 0; i < RECENT && p == null; i++) p = ring.recent.get(i);
+        }
+        if (p != null) {
+            reused.increment();
+            return p;
+        }
+        inline.increment();
+        return render(face, r, perturb, json);
+    }
+
+    static Payload render(boolean face, Random r, boolean perturb, boolean json) throws Exception {
+        Random jitter = perturb ? r : null;
+        byte[] png;
+        String label;
+        if (face) {
+            boolean happy = r.nextBoolean();
+            png = MessageGenerator.renderFaceImage(happy, jitter);
+            label = happy ? "HAPPY" : "SAD";
+        } else {
+            int team = r.nextInt(4);
+            png = MessageGenerator.renderTeamImage(team, jitter);
+            label = TEAM_LABELS[team];
+        }
+        return new Payload(face, label, png, json ? gson.toJson(Base64.getEncoder().encodeToString(png)) : null);
+    }
+
+    // enche o ring mais vazio; com os dois cheios, dorme um pouco (não há o que consumir a CPU)
+    private void renderLoop() {
+        Random r = ThreadLocalRandom.current();
+        while (running) {
+            boolean face = faces.size() <= teams.size();
+            Ring ring = face ? faces : teams;
+            if (ring.size() > ring.mask) {
+                LockSupport.parkNanos(1_000_000L);
+                continue;
+            }
+            try {
+                if (ring.offer(render(face, r, perturb, json))) rendered.increment();
+            } catch (Exception e) {
+                e.printStackTrace();
+                LockSupport.parkNanos(100_000_000L);
+            }
+        }
+    }
+
+    String summary() {
+        return String.format("pool: face=%d team=%d prontos, rendered=%d taken=%d reused=%d inline=%d",
+                faces.size(), teams.size(), rendered.sum(), taken.sum(), reused.sum(), inline.sum());
+    }
+}
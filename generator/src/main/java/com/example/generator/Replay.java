@@ -0,0 +1,102 @@
+package com.example.generator;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reproduz um {@link WorkloadLog} gravado (GEN_MODE=replay), sem custo de render/PNG durante o teste.
+ * GEN_REPLAY_SPEED: "original" (mesmos intervalos da gravação), "max" (o mais rápido que o broker aceitar)
+ * ou um fator numérico (ex.: 2 = duas vezes mais rápido). GEN_REPLAY_LOOPS repete o arquivo.
+ */
+final class Replay {
+    private Replay() {}
+
+    static void run(Connection conn, Path file, String speed, int loops) throws Exception {
+        WorkloadLog.Reader reader = WorkloadLog.Reader.open(file);
+        double factor = "max".equalsIgnoreCase(speed) ? 0.0
+                : "original".equalsIgnoreCase(speed) ? 1.0 : Double.parseDouble(speed);
+
+        Channel channel = conn.createChannel();
+        channel.exchangeDeclare(MessageGenerator.EXCHANGE, "topic", true);
+        ConfirmTracker tracker = MessageGenerator.confirmsFor(channel);
+        System.out.println("Replay " + file + " (gravado em " + Instant.ofEpochMilli(reader.recordedAtMillis) +
+                ") speed=" + speed + " loops=" + loops);
+
+        WorkloadLog.Record r = new WorkloadLog.Record();
+        long total = 0;
+        for (int loop = 1; loop <= loops; loop++) {
+            reader.rewind();
+            long start = System.nanoTime();
+            long count = 0;
+            while (reader.next(r)) {
+                if (factor > 0) {
+                    long due = start + (long) (r.offsetMicros * 1000 / factor);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                }
+                // shard recalculado com o GEN_SHARDS atual (a gravação pode ter sido feita com outro N)
+                String type = r.routingKey.contains(".") ? r.routingKey.substring(0, r.routingKey.indexOf('.')) : r.routingKey;
+                // timestamp renovado (header no binário, campo no JSON) para a latência medida nos
+                // consumers refletir o replay e não o tempo desde a gravação
+                String now = Instant.now().toString();
+                try {
+                    MessageGenerator.publish(channel, tracker, MessageGenerator.shardKey(type, r.id),
+                            r.binary ? MessageGenerator.binaryProps(r.id, type, now) : null,
+                            r.binary ? r.body : withTimestamp(r.body, now));
+                } catch (IOException e) {
+                    // channel caiu ou confirms parados: a mensagem fica nas pendentes que o channel novo reenvia
+                    if (tracker == null || !tracker.broken()) throw e;
+                    System.err.println("Replay: " + e.getMessage());
+                    tracker = tracker.recycle(conn);
+                }
+                count++;
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            total += count;
+            System.out.println(String.format("Replay loop %d/%d: %d mensagens em %.2fs (%.1f msg/s)",
+                    loop, loops, count, secs, secs > 0 ? count / secs : 0.0));
+        }
+        if (tracker != null) {
+            boolean done = tracker.awaitAll(30_000);
+            System.out.println("Replay confirms: " + ConfirmTracker.summary(Collections.singletonList(tracker)) +
+                    (done ? "" : " (timeout esperando confirms)"));
+        }
+        System.out.println("Replay finished: total=" + total);
+        conn.close();
+    }
+
+    private static final byte[] TIMESTAMP_FIELD = "\"timestamp\":\"".getBytes(StandardCharsets.US_ASCII);
+
+    // troca o valor do campo timestamp do JSON gravado sem re-serializar: o campo vem antes do image
+    // (jsonBody e ordem de campos do MessagePayload), então só o começo do corpo é examinado
+    static byte[] withTimestamp(byte[] json, String timestamp) {
+        int limit = Math.min(json.length, 512) - TIMESTAMP_FIELD.length;
+        for (int i = 0; i <= limit; i++) {
+            if (!matches(json, i, TIMESTAMP_FIELD)) continue;
+            int from = i + TIMESTAMP_FIELD.length, to = from;
+            while (to < json.length && json[to] != '"') to++;
+            if (to == json.length) break;
+            byte[] value = timestamp.getBytes(StandardCharsets.US_ASCII);
+            byte[] out = new byte[json.length - (to - from) + value.length];
+            System.arraycopy(json, 0, out, 0, from);
+            System.arraycopy(value, 0, out, from, value.length);
+            System.arraycopy(json, to, out, from + value.length, json.length - to);
+            return out;
+        }
+        return json;   // sem timestamp (ou formato inesperado): publica como gravado
+    }
+
+    private static boolean matches(byte[] b, int at, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (b[at + j] != pattern[j]) return false;
+        }
+        return true;
+    }
+}
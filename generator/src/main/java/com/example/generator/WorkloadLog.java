@@ -0,0 +1,131 @@
+package com.example.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Log binário append-only de mensagens publicadas, para gravar e reproduzir cargas.
+ *
+ * Formato (big-endian): cabeçalho magic "WKL1" + início da gravação (epoch ms), depois registros
+ * offsetMicros(i64) flags(u8, bit0 = binário) routingKey(u8 len + ASCII) id(u8 len + ASCII)
+ * body(i32 len + bytes). O corpo é exatamente o que foi publicado (JSON ou PNG cru).
+ */
+final class WorkloadLog {
+    static final int MAGIC = 0x574B4C31; // "WKL1"
+    static final int FLAG_BINARY = 1;
+
+    private WorkloadLog() {}
+
+    static final class Record {
+        long offsetMicros;
+        boolean binary;
+        String routingKey;
+        String id;
+        byte[] body;
+    }
+
+    /** Gravador: thread-safe (vários publishers) e append-only. */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final long startNanos = System.nanoTime();
+        private long records;
+
+        private Writer(DataOutputStream out) { this.out = out; }
+
+        static Writer open(Path file) throws IOException {
+            boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+            if (!fresh) {
+                // não mistura gravações: offsets são relativos ao início de cada arquivo
+                throw new IOException("Arquivo de gravação já existe: " + file);
+            }
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeLong(System.currentTimeMillis());
+            return new Writer(out);
+        }
+
+        synchronized void append(String routingKey, boolean binary, String id, byte[] body) throws IOException {
+            out.writeLong((System.nanoTime() - startNanos) / 1000);
+            out.writeByte(binary ? FLAG_BINARY : 0);
+            writeShortString(routingKey);
+            writeShortString(id);
+            out.writeInt(body.length);
+            out.write(body);
+            records++;
+        }
+
+        private void writeShortString(String s) throws IOException {
+            byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+            out.writeByte(b.length);
+            out.write(b);
+        }
+
+        synchronized long records() { return records; }
+
+        synchronized void flush() throws IOException { out.flush(); }
+
+        @Override
+        public synchronized void close() throws IOException { out.close(); }
+    }
+
+    /** Leitor sequencial sobre o arquivo mapeado em memória. */
+    static final class Reader {
+        private final MappedByteBuffer buf;
+        private final int firstRecord;
+        final long recordedAtMillis;
+
+        private Reader(MappedByteBuffer buf) throws IOException {
+            this.buf = buf;
+            if (buf.remaining() < 12 || buf.getInt() != MAGIC) throw new IOException("Arquivo não é um workload log");
+            this.recordedAtMillis = buf.getLong();
+            this.firstRecord = buf.position();
+        }
+
+        static Reader open(Path file) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (ch.size() > Integer.MAX_VALUE) throw new IOException("Workload log maior que 2 GiB: " + file);
+                return new Reader(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            }
+        }
+
+        void rewind() { buf.position(firstRecord); }
+
+        /** Preenche r com o próximo registro; false no fim do arquivo (registro truncado também encerra). */
+        boolean next(Record r) {
+            if (buf.remaining() < 8 + 1 + 1) return false;
+            int mark = buf.position();
+            try {
+                r.offsetMicros = buf.getLong();
+                r.binary = (buf.get() & FLAG_BINARY) != 0;
+                r.routingKey = readShortString(buf);
+                r.id = readShortString(buf);
+                int len = buf.getInt();
+                if (len < 0 || len > buf.remaining()) throw new IllegalStateException("registro truncado");
+                r.body = new byte[len];
+                buf.get(r.body);
+                return true;
+            } catch (RuntimeException e) {
+                buf.position(mark);
+                return false;
+            }
+        }
+
+        private static String readShortString(ByteBuffer buf) {
+            byte[] b = new byte[buf.get() & 0xff];
+            buf.get(b);
+            return new String(b, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.resultssink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Log append-only dos resultados em segmentos de tamanho fixo mapeados em memória
+ * (results-0000000001.log, ...). Append = cópia para o MappedByteBuffer, sem syscall por registro;
+ * force() periódico leva as páginas para o disco. Segmento cheio -> abre o próximo; acima de
+ * maxSegments o mais antigo é apagado (retenção por volume).
+ *
+ * Formato do segmento (big-endian): magic "RSL1", depois registros len(i32) + payload, com
+ * payload = type(UTF) id(UTF) label(UTF) model(UTF) latencyMicros(i32) classifiedAt(i64) storedAt(i64).
+ * O arquivo nasce zerado; cada append escreve payload, um len 0 logo depois dele e só então o
+ * próprio len. Len 0 marca o fim: um registro interrompido no meio nunca é lido, e o próximo
+ * append sobrescreve os restos dele.
+ *
+ * Índice: por segmento, uma tabela de endereçamento aberto num long[] (hash de 32 bits do id no alto,
+ * offset + 1 embaixo; ~8-12 bytes por registro em vez de um HashMap com a String do id), reconstruído
+ * varrendo os arquivos na abertura e descartado junto com o segmento. O hash só escolhe candidatos:
+ * o id é conferido no próprio registro antes de responder. Lookup = do segmento mais novo para o mais antigo.
+ */
+final class ResultLog {
+    static final int MAGIC = 0x52534C31; // "RSL1"
+
+    static final class Result {
+        String type, id, label, model;
+        int latencyMicros;
+        long classifiedAt, storedAt;
+    }
+
+    private static final class Segment {
+        final Path file;
+        final long seq;
+        final MappedByteBuffer buf;
+        final OffsetIndex index = new OffsetIndex();
+        int end, count;
+
+        Segment(Path file, long seq, MappedByteBuffer buf) {
+            this.file = file;
+            this.seq = seq;
+            this.buf = buf;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes, maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();   // mais antigo primeiro
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream(256);
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+    private long records;
+
+    private ResultLog(Path dir, int segmentBytes, int maxSegments) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+
+    static ResultLog open(Path dir, int segmentBytes, int maxSegments) throws IOException {
+        Files.createDirectories(dir);
+        ResultLog log = new ResultLog(dir, segmentBytes, maxSegments);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            s.filter(p -> p.getFileName().toString().matches("results-\\d+\\.log")).sorted().forEach(files::add);
+        }
+        for (Path f : files) log.segments.addLast(log.load(f));
+        if (log.segments.isEmpty()) log.segments.addLast(log.create(1));
+        log.trim();
+        return log;
+    }
+
+    synchronized long records() { return records; }
+    synchronized int segments() { return segments.size(); }
+
+    synchronized void append(Result r) throws IOException {
+        scratch.reset();
+        scratchOut.writeUTF(r.type);
+        scratchOut.writeUTF(r.id);
+        scratchOut.writeUTF(r.label);
+        scratchOut.writeUTF(r.model);
+        scratchOut.writeInt(r.latencyMicros);
+        scratchOut.writeLong(r.classifiedAt);
+        scratchOut.writeLong(r.storedAt);
+        int len = scratch.size();
+        if (4 + 4 + len > segmentBytes) throw new IOException("registro maior que o segmento: " + len + " bytes");
+
+        Segment active = segments.peekLast();
+        if (active.end + 4 + len > segmentBytes) {
+            active.buf.force();
+            active = create(active.seq + 1);
+            segments.addLast(active);
+            trim();
+        }
+        int pos = active.end;
+        ByteBuffer b = active.buf.duplicate();
+        b.position(pos + 4);
+        b.put(scratch.toByteArray(), 0, len);
+        int end = pos + 4 + len;
+        if (end + 4 <= segmentBytes) active.buf.putInt(end, 0);
+        active.buf.putInt(pos, len);   // publica o registro só depois do payload completo
+        active.end = end;
+        active.count++;
+        active.index.put(r.id, pos, active.buf);
+        records++;
+    }
+
+    /** Resultado mais recente para o id, ou null. */
+    synchronized Result lookup(String id) {
+        for (Iterator<Segment> it = segments.descendingIterator(); it.hasNext(); ) {
+            Segment s = it.next();
+            int pos = s.index.get(id, s.buf);
+            if (pos >= 0) return read(s.buf, pos);
+        }
+        return null;
+    }
+
+    synchronized void force() {
+        segments.peekLast().buf.force();
+    }
+
+    private Segment create(long seq) throws IOException {
+        Path file = dir.resolve(String.format("results-%010d.log", seq));
+        Segment s = new Segment(file, seq, map(file));
+        s.buf.putInt(0, MAGIC);
+        s.end = 4;
+        System.out.println("[Sink] novo segmento " + file.getFileName());
+        return s;
+    }
+
+    private Segment load(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        long seq = Long.parseLong(name.substring("results-".length(), name.length() - ".log".length()));
+        Segment s = new Segment(file, seq, map(file));
+        int magic = s.buf.getInt(0);
+        if (magic == 0) {
+            s.buf.putInt(0, MAGIC);   // criado mas nunca escrito
+        } else if (magic != MAGIC) {
+            throw new IOException("Arquivo não é um segmento de resultados: " + file);
+        }
+        int pos = 4;
+        while (pos + 4 <= segmentBytes) {
+            int len = s.buf.getInt(pos);
+            if (len <= 0 || pos + 4 + len > segmentBytes) break;
+            Result r = read(s.buf, pos);
+            if (r == null) break;
+            s.index.put(r.id, pos, s.buf);
+            pos += 4 + len;
+            s.count++;
+        }
+        s.end = pos;
+        records += s.count;
+        System.out.println("[Sink] " + name + ": " + s.index.size() + " ids indexados");
+        return s;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (ch.size() > segmentBytes) {
+                throw new IOException("Segmento " + file + " maior que SINK_SEGMENT_MB atual (" + ch.size() + " bytes)");
+            }
+            // o mapeamento continua válido depois de fechar o channel
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    // apaga os segmentos mais antigos além do limite (o índice vai junto)
+    private void trim() throws IOException {
+        while (segments.size() > maxSegments) {
+            Segment old = segments.removeFirst();
+            records -= old.count;
+            Files.deleteIfExists(old.file);
+            System.out.println("[Sink] segmento " + old.file.getFileName() + " removido (retenção)");
+        }
+    }
+
+    private static Result read(MappedByteBuffer buf, int pos) {
+        try {
+            ByteBuffer b = buf.duplicate();
+            b.position(pos + 4);
+            Result r = new Result();
+            r.type = readUtf(b);
+            r.id = readUtf(b);
+            r.label = readUtf(b);
+            r.model = readUtf(b);
+            r.latencyMicros = b.getInt();
+            r.classifiedAt = b.getLong();
+            r.storedAt = b.getLong();
+            return r;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // só o id do registro em pos (pula o type), para conferir candidatos do índice
+    private static String idAt(MappedByteBuffer buf, int pos) {
+        ByteBuffer b = buf.duplicate();
+        b.position(pos + 4);
+        int typeLen = b.getShort() & 0xFFFF;
+        b.position(b.position() + typeLen);
+        return readUtf(b);
+    }
+
+    // inverso do writeUTF para os textos ASCII/UTF-8 comuns (ids, rótulos, tags)
+    private static String readUtf(ByteBuffer b) {
+        int len = b.getShort() & 0xFFFF;
+        byte[] bytes = new byte[len];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // id -> offset do registro mais recente no segmento; entrada = hash << 32 | (offset + 1), 0 = vazio
+    private static final class OffsetIndex {
+        private long[] slots = new long[1024];
+        private int size;
+
+        int size() { return size; }
+
+        void put(String id, int pos, MappedByteBuffer buf) {
+            if ((size + 1) * 10L > slots.length * 7L) grow();
+            int h = hash(id), mask = slots.length - 1;
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                long e = slots[i];
+                if (e == 0) {
+                    slots[i] = entry(h, pos);
+                    size++;
+                    return;
+                }
+                // mesmo id regravado: fica o offset novo
+                if ((int) (e >>> 32) == h && id.equals(idAt(buf, (int) e - 1))) {
+                    slots[i] = entry(h, pos);
+                    return;
+                }
+            }
+        }
+
+        /** Offset do registro com este id, ou -1. */
+        int get(String id, MappedByteBuffer buf) {
+            int h = hash(id), mask = slots.length - 1;
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                long e = slots[i];
+                if (e == 0) return -1;
+                if ((int) (e >>> 32) == h && id.equals(idAt(buf, (int) e - 1))) return (int) e - 1;
+            }
+        }
+
+        // a posição inicial sai do próprio hash guardado, então dá para redistribuir sem reler os ids
+        private void grow() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            int mask = slots.length - 1;
+            for (long e : old) {
+                if (e == 0) continue;
+                int i = (int) (e >>> 32) & mask;
+                while (slots[i] != 0) i = (i + 1) & mask;
+                slots[i] = e;
+            }
+        }
+
+        private static long entry(int hash, int pos) {
+            return (long) hash << 32 | (pos + 1L);
+        }
+
+        private static int hash(String id) {
+            int h = id.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.resultssink;
+
+import com.google.gson.Gson;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consome os lotes de predições do exchange "results" (publicados pelos consumers) e grava cada
+ * resultado no {@link ResultLog}. O ack do lote sai depois do append: o registro já está no page
+ * cache (sobrevive a queda do processo), o force() periódico cobre queda da máquina.
+ * Consulta por id em GET /results/{id} (JSON), contadores em GET /stats.
+ */
+public class ResultsSink {
+    private static final String EXCHANGE = "results";
+    private static final String QUEUE = "queue_results";
+    private static final String CONTENT_TYPE = "application/x-results";
+    private static final int MAGIC = 0x52455331; // "RES1", ver ResultPublisher (consumer-common)
+    private static final Gson gson = new Gson();
+
+    // batches: escrito pela thread do AMQP e lido pelo /stats (thread do HTTP)
+    private static final AtomicLong batches = new AtomicLong();
+    private static long lastLog;
+
+    public static void main(String[] args) throws Exception {
+        String host = System.getenv().getOrDefault("RABBITMQ_HOST", "localhost");
+        String user = System.getenv().getOrDefault("RABBITMQ_USER", "guest");
+        String pass = System.getenv().getOrDefault("RABBITMQ_PASS", "guest");
+        String dir = System.getenv().getOrDefault("SINK_DIR", "./results");
+        int segmentMb = Integer.parseInt(System.getenv().getOrDefault("SINK_SEGMENT_MB", "64"));
+        int maxSegments = Integer.parseInt(System.getenv().getOrDefault("SINK_MAX_SEGMENTS", "8"));
+        long forceMs = Long.parseLong(System.getenv().getOrDefault("SINK_FORCE_MS", "1000"));
+        int prefetch = Integer.parseInt(System.getenv().getOrDefault("SINK_PREFETCH", "16"));
+        int httpPort = Integer.parseInt(System.getenv().getOrDefault("SINK_HTTP_PORT", "9103"));
+
+        ResultLog log = ResultLog.open(Paths.get(dir), segmentMb << 20, maxSegments);
+        System.out.println("[Sink] " + dir + ": " + log.records() + " resultados em " + log.segments() + " segmentos");
+        serve(httpPort, log);
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "results-sink-force");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(log::force, forceMs, forceMs, TimeUnit.MILLISECONDS);
+
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(host);
+        factory.setUsername(user);
+        factory.setPassword(pass);
+
+        Connection conn = factory.newConnection();
+        Channel channel = conn.createChannel();
+        channel.exchangeDeclare(EXCHANGE, "topic", true);
+        channel.queueDeclare(QUEUE, true, false, false, null);
+        channel.queueBind(QUEUE, EXCHANGE, "#");
+        channel.basicQos(prefetch);
+
+        // um único consumer: os callbacks chegam em sequência, append e ack sem concorrência
+        DeliverCallback callback = (consumerTag, delivery) -> {
+            long tag = delivery.getEnvelope().getDeliveryTag();
+            int n;
+            try {
+                n = store(log, delivery.getEnvelope().getRoutingKey(), delivery.getProperties().getContentType(),
+                        delivery.getBody());
+            } catch (IOException e) {
+                // lote ilegível não vai ficar legível numa nova tentativa
+                System.out.println("[Sink] lote descartado: " + e.getMessage());
+                channel.basicReject(tag, false);
+                return;
+            }
+            channel.basicAck(tag, false);
+            long b = batches.incrementAndGet();
+            if (log.records() / 1000 != lastLog / 1000) {
+                lastLog = log.records();
+                System.out.println("[Sink] " + log.records() + " resultados gravados (" + b + " lotes, último com " + n + ")");
+            }
+        };
+        channel.basicConsume(QUEUE, false, callback, consumerTag -> {});
+        System.out.println("ResultsSink waiting for results... (" + QUEUE + ", segmentos de " + segmentMb + "MB, máx " +
+                maxSegments + ")");
+    }
+
+    // decodifica um lote RES1 e grava registro a registro; retorna quantos foram gravados
+    static int store(ResultLog log, String type, String contentType, byte[] body) throws IOException {
+        if (!CONTENT_TYPE.equals(contentType)) throw new IOException("content-type inesperado: " + contentType);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        if (in.readInt() != MAGIC) throw new IOException("lote sem magic RES1");
+        int count = in.readInt();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            ResultLog.Result r = new ResultLog.Result();
+            r.type = type;
+            r.id = in.readUTF();
+            r.label = in.readUTF();
+            r.model = in.readUTF();
+            r.latencyMicros = in.readInt();
+            r.classifiedAt = in.readLong();
+            r.storedAt = now;
+            log.append(r);
+        }
+        return count;
+    }
+
+    static void serve(int port, ResultLog log) throws IOException {
+        if (port <= 0) return;
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/results/", exchange -> {
+            String id = exchange.getRequestURI().getPath().substring("/results/".length());
+            ResultLog.Result r = log.lookup(id);
+            if (r == null) respond(exchange, 404, "text/plain; charset=utf-8", "id não encontrado\n");
+            else respond(exchange, 200, "application/json", gson.toJson(r) + "\n");
+        });
+        server.createContext("/stats", exchange -> respond(exchange, 200, "text/plain; charset=utf-8",
+                "records " + log.records() + "\nsegments " + log.segments() + "\nbatches " + batches.get() + "\n"));
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "results-sink-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        System.out.println("Consulta em http://0.0.0.0:" + port + "/results/{id}");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}